@@ -0,0 +1,183 @@
+package es.sanitas.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.DatosAltaAsegurados;
+import es.sanitas.soporte.DatosAseguradoInclusion;
+import es.sanitas.soporte.StaticVarsContratacion;
+import wscontratacion.contratacion.fuentes.parametros.DatosDomicilio;
+import wscontratacion.contratacion.fuentes.parametros.DatosProductoAlta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Construye datos de alta, planes y tarificaciones sintéticos para los benchmarks.
+ * <p>
+ * Los objetos de los stubs se construyen a partir de mapas con Jackson, igual que los deserializa
+ * el cliente REST, para no depender de sus constructores.
+ */
+final class DatosSinteticos {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+
+    /** Identificador del primer producto; se evitan los productos con tratamiento especial. */
+    private static final int PRIMER_PRODUCTO = 1;
+    private static final int COBERTURAS_POR_DEFECTO = 3;
+    private static final String EDAD = "35";
+
+    private DatosSinteticos() {
+    }
+
+    /**
+     * @param asegurados número total de asegurados, titular incluido
+     * @param productos  productos contratados por cada asegurado
+     * @return datos de un alta con los asegurados y productos indicados
+     */
+    static DatosAltaAsegurados alta(final int asegurados, final int productos) {
+        return alta(asegurados, productos, productos);
+    }
+
+    /**
+     * @param asegurados    número total de asegurados, titular incluido
+     * @param productos     productos contratados por cada asegurado
+     * @param productosPlan productos del plan; los contratados se reparten a lo largo del plan
+     * @return datos de un alta con los asegurados y productos indicados
+     */
+    static DatosAltaAsegurados alta(final int asegurados, final int productos, final int productosPlan) {
+        final DatosAltaAsegurados alta = new DatosAltaAsegurados();
+        final List<DatosDomicilio> domicilios = new ArrayList<>();
+        domicilios.add(new DatosDomicilio());
+        alta.setDomicilios(domicilios);
+        alta.setTitular(asegurado(productos, productosPlan));
+        final List<DatosAseguradoInclusion> resto = new ArrayList<>();
+        for (int i = 1; i < asegurados; i++) {
+            resto.add(asegurado(productos, productosPlan));
+        }
+        alta.setAsegurados(resto);
+        return alta;
+    }
+
+    /**
+     * @param productos productos del plan
+     * @return plan con los productos indicados, cada uno con varias coberturas obligatorias
+     */
+    static DatosContratacionPlan plan(final int productos) {
+        return plan(productos, COBERTURAS_POR_DEFECTO);
+    }
+
+    /**
+     * @param productos  productos del plan
+     * @param coberturas coberturas de cada producto; la mitad son obligatorias
+     * @return plan con los productos y coberturas indicados
+     */
+    static DatosContratacionPlan plan(final int productos, final int coberturas) {
+        final List<Map<String, Object>> productosPlan = new ArrayList<>();
+        for (int p = 0; p < productos; p++) {
+            final List<Map<String, Object>> coberturasProducto = new ArrayList<>();
+            for (int c = 0; c < coberturas; c++) {
+                final Map<String, Object> cobertura = new HashMap<>();
+                cobertura.put("idCobertura", (long) (p * 1000 + c));
+                cobertura.put("swObligatorio", c % 2 == 0);
+                cobertura.put("capitalMinimo", 1000L * (c + 1));
+                coberturasProducto.add(cobertura);
+            }
+            final Map<String, Object> producto = new HashMap<>();
+            producto.put("idProducto", PRIMER_PRODUCTO + p);
+            producto.put("swObligatorio", p == 0);
+            producto.put("descComercial", "Producto " + (PRIMER_PRODUCTO + p));
+            producto.put("coberturas", coberturasProducto);
+            productosPlan.add(producto);
+        }
+        return MAPPER.convertValue(Collections.singletonMap("productos", productosPlan), DatosContratacionPlan.class);
+    }
+
+    /**
+     * @param asegurados número de asegurados tarificados
+     * @param productos  productos por asegurado
+     * @param promociones promociones aplicadas a cada asegurado
+     * @param recibos    recibos del primer año
+     * @return tarificación con importes distintos para cada asegurado y producto
+     */
+    static Tarificacion tarificacion(final int asegurados, final int productos, final int promociones, final int recibos) {
+        final List<Map<String, Object>> tarifasBeneficiarios = new ArrayList<>();
+        for (int a = 0; a < asegurados; a++) {
+            final List<Map<String, Object>> tarifasProductos = new ArrayList<>();
+            for (int p = 0; p < productos; p++) {
+                final Map<String, Object> desglose = new HashMap<>();
+                desglose.put("prima", 40.0 + a + p);
+                desglose.put("ISPrima", 0.6);
+                desglose.put("descuento", -2.0);
+                desglose.put("css", 0.15);
+                final Map<String, Object> tarifaProducto = new HashMap<>();
+                tarifaProducto.put("idProducto", (long) (PRIMER_PRODUCTO + p));
+                tarifaProducto.put("descripcion", "Producto " + (PRIMER_PRODUCTO + p));
+                tarifaProducto.put("tarifaDesglosada", desglose);
+                tarifasProductos.add(tarifaProducto);
+            }
+            tarifasBeneficiarios.add(Collections.<String, Object>singletonMap("tarifasProductos", tarifasProductos));
+        }
+
+        final List<Map<String, Object>> listaPromociones = new ArrayList<>();
+        for (int a = 0; a < asegurados; a++) {
+            for (int p = 0; p < promociones; p++) {
+                final Map<String, Object> promocion = new HashMap<>();
+                promocion.put("idPromocion", String.valueOf(p + 1));
+                promocion.put("descripcion", "Promocion " + (p + 1));
+                promocion.put("tipo", 1);
+                listaPromociones.add(promocion);
+            }
+        }
+
+        final Map<String, Object> tarificacion = new LinkedHashMap<>();
+        tarificacion.put("tarifas", Collections.singletonMap("tarifaBeneficiarios", tarifasBeneficiarios));
+        tarificacion.put("promociones", Collections.singletonMap("listaPromocionesPoliza", listaPromociones));
+        if (recibos > 0) {
+            final List<Map<String, Object>> recibosProductos = new ArrayList<>();
+            final List<Map<String, Object>> recibosPoliza = new ArrayList<>();
+            for (int r = 0; r < recibos; r++) {
+                recibosProductos.add(Collections.<String, Object>singletonMap("idProducto", (long) (PRIMER_PRODUCTO + r % productos)));
+                recibosPoliza.add(Collections.<String, Object>singletonMap("importe", 42.0 * asegurados * productos));
+            }
+            final Map<String, Object> listaRecibos = new HashMap<>();
+            listaRecibos.put("listaRecibosProductos", recibosProductos);
+            listaRecibos.put("reciboPoliza", Collections.singletonMap("recibos", recibosPoliza));
+            tarificacion.put("recibos", listaRecibos);
+        }
+        return MAPPER.convertValue(tarificacion, Tarificacion.class);
+    }
+
+    /**
+     * @param plan plan a tarificar
+     * @return valores de sesión que espera RealizarSimulacion
+     */
+    static Map<String, Object> valores(final DatosContratacionPlan plan) {
+        final Map<String, Object> hmValores = new HashMap<>();
+        hmValores.put(StaticVarsContratacion.DATOS_PLAN, plan);
+        hmValores.put(StaticVarsContratacion.LIST_EXCEPCIONES, new ArrayList<String>());
+        return hmValores;
+    }
+
+    private static DatosAseguradoInclusion asegurado(final int productos, final int productosPlan) {
+        final DatosAseguradoInclusion asegurado = MAPPER.convertValue(
+                Collections.singletonMap("datosPersonales", Collections.singletonMap("fNacimiento", EDAD)),
+                DatosAseguradoInclusion.class);
+        final List<DatosProductoAlta> contratados = new ArrayList<>();
+        final int salto = Math.max(1, productosPlan / productos);
+        for (int p = 0; p < productos; p++) {
+            contratados.add(MAPPER.convertValue(Collections.singletonMap("idProducto", PRIMER_PRODUCTO + p * salto),
+                    DatosProductoAlta.class));
+        }
+        asegurado.setProductosContratados(contratados);
+        return asegurado;
+    }
+}
@@ -0,0 +1,85 @@
+package es.sanitas.benchmark;
+
+import es.sanitas.RealizarSimulacion;
+import es.sanitas.ResultadoSimulacion;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.soporte.DatosAltaAsegurados;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide {@link RealizarSimulacion#realizarSimulacion} de un alta con todas las frecuencias contra un
+ * servicio en memoria: construcción de las peticiones, ejecución en el pool y agregación de las
+ * tarificaciones. El mapa devuelto se recorre entero para que la vista legada construya sus claves,
+ * como al leerlo en la sesión; {@link #calcularSimulacion()} mide el resultado tipado sin el mapa.
+ * <p>
+ * Para obtener también la tasa de asignación ({@code gc.alloc.rate.norm}) se ejecuta con
+ * {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RealizarSimulacionBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int beneficiarios;
+
+    @Param({"1", "4"})
+    private int productosPorBeneficiario;
+
+    @Param({"0", "2"})
+    private int promociones;
+
+    @Param({"0", "12"})
+    private int recibos;
+
+    private RealizarSimulacion simulacion;
+    private DatosAltaAsegurados alta;
+    private Map<String, Object> hmValores;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        final DatosContratacionPlan plan = DatosSinteticos.plan(productosPorBeneficiario);
+        alta = DatosSinteticos.alta(beneficiarios, productosPorBeneficiario);
+        hmValores = DatosSinteticos.valores(plan);
+        simulacion = new RealizarSimulacion();
+        simulacion.setServicioSimulacion(new SimulacionWSMemoria(
+                DatosSinteticos.tarificacion(beneficiarios, productosPorBeneficiario, promociones, recibos)));
+    }
+
+    @TearDown(Level.Trial)
+    public void liberar() throws Exception {
+        simulacion.destroy();
+    }
+
+    @Benchmark
+    public void realizarSimulacion(final Blackhole blackhole) throws Exception {
+        for (final Map.Entry<String, Object> entrada : simulacion.realizarSimulacion(alta, null, null, true, hmValores).entrySet()) {
+            blackhole.consume(entrada.getKey());
+            blackhole.consume(entrada.getValue());
+        }
+    }
+
+    @Benchmark
+    public ResultadoSimulacion calcularSimulacion() throws Exception {
+        return simulacion.calcularSimulacion(alta, null, null, true, hmValores, null);
+    }
+}
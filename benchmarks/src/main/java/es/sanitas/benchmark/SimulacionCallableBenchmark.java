@@ -0,0 +1,72 @@
+package es.sanitas.benchmark;
+
+import es.sanitas.CatalogoPlan;
+import es.sanitas.SimulacionCallable;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.soporte.DatosAltaAsegurados;
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.TarificacionPoliza;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mide la construcción de la petición de {@link SimulacionCallable} para pólizas colectivas de
+ * distinto tamaño: beneficiarios, productos y coberturas obligatorias de cada asegurado.
+ * <p>
+ * El servicio en memoria devuelve una tarificación ya construida, de modo que el tiempo medido es
+ * el de componer la {@code Simulacion}. {@link #construirSimulacion()} reutiliza el
+ * {@link CatalogoPlan}, como cuando está en la caché de catálogos;
+ * {@link #construirSimulacionConCatalogo()} indexa el plan en cada simulación, como sin caché.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulacionCallableBenchmark {
+
+    private static final int PRODUCTOS_POR_ASEGURADO = 4;
+    private static final int COBERTURAS_POR_PRODUCTO = 12;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int asegurados;
+
+    @Param({"8", "40"})
+    private int productosPlan;
+
+    private DatosContratacionPlan plan;
+    private DatosAltaAsegurados alta;
+    private SimulacionWSMemoria servicio;
+    private SimulacionCallable simulacion;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        plan = DatosSinteticos.plan(productosPlan, COBERTURAS_POR_PRODUCTO);
+        alta = DatosSinteticos.alta(asegurados, PRODUCTOS_POR_ASEGURADO, productosPlan);
+        servicio = new SimulacionWSMemoria(DatosSinteticos.tarificacion(1, PRODUCTOS_POR_ASEGURADO, 0, 0));
+        simulacion = new SimulacionCallable(CatalogoPlan.de(plan), alta, null, null, FrecuenciaEnum.MENSUAL, servicio, null);
+    }
+
+    @Benchmark
+    public TarificacionPoliza construirSimulacion() throws Exception {
+        return simulacion.call();
+    }
+
+    @Benchmark
+    public TarificacionPoliza construirSimulacionConCatalogo() throws Exception {
+        return new SimulacionCallable(CatalogoPlan.de(plan), alta, null, null, FrecuenciaEnum.MENSUAL, servicio, null).call();
+    }
+}
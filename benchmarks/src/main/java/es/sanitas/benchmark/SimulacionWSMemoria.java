@@ -0,0 +1,27 @@
+package es.sanitas.benchmark;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+
+/**
+ * Servicio de simulación en memoria: devuelve siempre la misma tarificación sintética, construida
+ * una sola vez, para que el benchmark mida sólo el coste local de la simulación.
+ */
+class SimulacionWSMemoria implements SimulacionWS {
+
+    private final Tarificacion tarificacion;
+
+    SimulacionWSMemoria(final Tarificacion tarificacion) {
+        this.tarificacion = tarificacion;
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        final RESTResponse<Tarificacion, Error> response = new RESTResponse<>();
+        response.out = tarificacion;
+        return response;
+    }
+}
@@ -0,0 +1,162 @@
+package es.sanitas;
+
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosCobertura;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosPlanProducto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU acotada de los {@link CatalogoPlan} de cada plan, compartida por todas las peticiones.
+ * <p>
+ * El plan llega completo en cada petición, así que la clave es el identificador del plan junto
+ * con una versión calculada a partir de su contenido: mientras el plan no cambia se reutiliza el
+ * mismo índice y, si llega una revisión distinta, se reconstruye y sustituye al anterior.
+ * Pensada para declararse como bean de Spring e inyectarse en los {@link RealizarSimulacion}.
+ */
+public class CacheCatalogosPlan {
+
+    private static final int CAPACIDAD_POR_DEFECTO = 500;
+
+    private final Map<Long, Entrada> entradas;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong construcciones = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+
+    public CacheCatalogosPlan() {
+        this(CAPACIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * @param capacidad número máximo de planes almacenados
+     */
+    public CacheCatalogosPlan(final int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cache debe ser positiva");
+        }
+        this.entradas = new LinkedHashMap<Long, Entrada>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Entrada> eldest) {
+                final boolean expulsar = size() > capacidad;
+                if (expulsar) {
+                    expulsiones.incrementAndGet();
+                }
+                return expulsar;
+            }
+        };
+    }
+
+    /**
+     * @param idPlan     plan a tarificar
+     * @param oDatosPlan datos del plan recibidos en la petición
+     * @return índice del plan, reutilizado si ya se había construido para la misma versión
+     */
+    public CatalogoPlan obtener(final long idPlan, final DatosContratacionPlan oDatosPlan) {
+        final long version = version(oDatosPlan);
+        synchronized (entradas) {
+            final Entrada entrada = entradas.get(idPlan);
+            if (entrada != null && entrada.version == version) {
+                aciertos.incrementAndGet();
+                return entrada.catalogo;
+            }
+        }
+
+        // Se construye fuera del bloqueo; si dos peticiones coinciden, la segunda sustituye a la primera
+        construcciones.incrementAndGet();
+        final CatalogoPlan catalogo = CatalogoPlan.de(oDatosPlan);
+        synchronized (entradas) {
+            entradas.put(idPlan, new Entrada(version, catalogo));
+        }
+        return catalogo;
+    }
+
+    /**
+     * Descarta el índice de un plan, para forzar su reconstrucción en la siguiente petición.
+     *
+     * @param idPlan plan modificado
+     */
+    public void invalidar(final long idPlan) {
+        synchronized (entradas) {
+            entradas.remove(idPlan);
+        }
+    }
+
+    /**
+     * Vacía la cache.
+     */
+    public void invalidar() {
+        synchronized (entradas) {
+            entradas.clear();
+        }
+    }
+
+    /**
+     * @return número de planes almacenados
+     */
+    public int getTamano() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    /**
+     * @return número de peticiones servidas con un índice ya construido
+     */
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    /**
+     * @return número de índices construidos
+     */
+    public long getConstrucciones() {
+        return construcciones.get();
+    }
+
+    /**
+     * @return número de planes expulsados por capacidad
+     */
+    public long getExpulsiones() {
+        return expulsiones.get();
+    }
+
+    /**
+     * Resume en un número los datos del plan que usa {@link CatalogoPlan}, sin generar objetos.
+     */
+    static long version(final DatosContratacionPlan oDatosPlan) {
+        long version = 1;
+        if (oDatosPlan == null || oDatosPlan.getProductos() == null) {
+            return version;
+        }
+        for (final DatosPlanProducto producto : oDatosPlan.getProductos()) {
+            version = 31 * version + producto.getIdProducto();
+            version = 31 * version + (producto.isSwObligatorio() ? 1 : 0);
+            version = 31 * version + Objects.hashCode(producto.getDescComercial());
+            if (producto.getCoberturas() != null) {
+                for (final DatosCobertura cobertura : producto.getCoberturas()) {
+                    version = 31 * version + Objects.hashCode(cobertura.getIdCobertura());
+                    version = 31 * version + (cobertura.isSwObligatorio() ? 1 : 0);
+                    version = 31 * version + Objects.hashCode(cobertura.getCapitalMinimo());
+                }
+            }
+            version = 31 * version + 7;
+        }
+        return version;
+    }
+
+    private static final class Entrada {
+        private final long version;
+        private final CatalogoPlan catalogo;
+
+        private Entrada(final long version, final CatalogoPlan catalogo) {
+            this.version = version;
+            this.catalogo = catalogo;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package es.sanitas;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU acotada, con caducidad, de los códigos promocionales que el servicio de simulación ha
+ * rechazado por no válidos.
+ * <p>
+ * Un código rechazado para un plan y un mediador se quita de las siguientes simulaciones antes de
+ * llamar al servicio, en lugar de hacer una llamada que se sabe que va a fallar y repetirla sin el
+ * código. Pensada para declararse como bean de Spring e inyectarse en los {@link RealizarSimulacion}.
+ */
+public class CachePromocionesRechazadas {
+
+    private static final int CAPACIDAD_POR_DEFECTO = 10000;
+    private static final long CADUCIDAD_POR_DEFECTO = TimeUnit.MINUTES.toMillis(30);
+
+    private final long caducidadMillis;
+    private final Map<String, Long> rechazos;
+
+    private final AtomicLong evitadas = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+
+    public CachePromocionesRechazadas() {
+        this(CAPACIDAD_POR_DEFECTO, CADUCIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * @param capacidad       número máximo de códigos almacenados
+     * @param caducidadMillis tiempo que se recuerda cada rechazo, en milisegundos
+     */
+    public CachePromocionesRechazadas(final int capacidad, final long caducidadMillis) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cache debe ser positiva");
+        }
+        this.caducidadMillis = caducidadMillis;
+        this.rechazos = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                final boolean expulsar = size() > capacidad;
+                if (expulsar) {
+                    expulsiones.incrementAndGet();
+                }
+                return expulsar;
+            }
+        };
+    }
+
+    /**
+     * @param idPlan     plan de la simulación
+     * @param idMediador mediador de la simulación, puede ser null
+     * @param codigo     código promocional introducido
+     * @return true si el servicio ha rechazado el código para el plan y mediador y el rechazo no ha
+     * caducado
+     */
+    public boolean estaRechazado(final long idPlan, final Long idMediador, final String codigo) {
+        if (codigo == null) {
+            return false;
+        }
+        final String clave = clave(idPlan, idMediador, codigo);
+        synchronized (rechazos) {
+            final Long caducaEn = rechazos.get(clave);
+            if (caducaEn == null) {
+                return false;
+            }
+            if (caducaEn <= System.currentTimeMillis()) {
+                rechazos.remove(clave);
+                expulsiones.incrementAndGet();
+                return false;
+            }
+        }
+        evitadas.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param idPlan     plan de la simulación
+     * @param idMediador mediador de la simulación, puede ser null
+     * @param codigo     código promocional rechazado por el servicio
+     */
+    public void registrarRechazo(final long idPlan, final Long idMediador, final String codigo) {
+        if (codigo == null) {
+            return;
+        }
+        final String clave = clave(idPlan, idMediador, codigo);
+        synchronized (rechazos) {
+            rechazos.put(clave, System.currentTimeMillis() + caducidadMillis);
+        }
+    }
+
+    /**
+     * Olvida todos los rechazos, p.e. tras dar de alta nuevas promociones.
+     */
+    public void invalidar() {
+        synchronized (rechazos) {
+            rechazos.clear();
+        }
+    }
+
+    /**
+     * @return número de códigos rechazados almacenados
+     */
+    public int getTamano() {
+        synchronized (rechazos) {
+            return rechazos.size();
+        }
+    }
+
+    /**
+     * @return número de simulaciones en las que se ha quitado un código ya rechazado
+     */
+    public long getEvitadas() {
+        return evitadas.get();
+    }
+
+    /**
+     * @return número de rechazos expulsados por capacidad o caducidad
+     */
+    public long getExpulsiones() {
+        return expulsiones.get();
+    }
+
+    private static String clave(final long idPlan, final Long idMediador, final String codigo) {
+        return idPlan + "|" + idMediador + "|" + codigo;
+    }
+}
@@ -0,0 +1,153 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorador de {@link SimulacionWS} que cachea las tarificaciones correctas en un almacén LRU
+ * acotado con caducidad.
+ * <p>
+ * La clave es la {@link HuellaSimulacion} de la simulación completa, por lo que una nueva
+ * tarificación del mismo grupo familiar con los mismos productos se sirve sin llamada remota.
+ * Se configura envolviendo el servicio real antes de pasarlo a
+ * {@link RealizarSimulacion#setServicioSimulacion(SimulacionWS)}.
+ */
+public class CacheSimulacionWS implements SimulacionWS {
+
+    private static final int CAPACIDAD_POR_DEFECTO = 1000;
+    private static final long CADUCIDAD_POR_DEFECTO = TimeUnit.MINUTES.toMillis(10);
+
+    private final SimulacionWS delegado;
+    private final long caducidadMillis;
+    private final Map<String, Entrada> entradas;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong expulsiones = new AtomicLong();
+
+    public CacheSimulacionWS(final SimulacionWS delegado) {
+        this(delegado, CAPACIDAD_POR_DEFECTO, CADUCIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * @param delegado        servicio de simulación real
+     * @param capacidad       número máximo de tarificaciones almacenadas
+     * @param caducidadMillis tiempo de vida de cada tarificación en milisegundos
+     */
+    public CacheSimulacionWS(final SimulacionWS delegado, final int capacidad, final long caducidadMillis) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad de la cache debe ser positiva");
+        }
+        this.delegado = delegado;
+        this.caducidadMillis = caducidadMillis;
+        this.entradas = new LinkedHashMap<String, Entrada>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entrada> eldest) {
+                final boolean expulsar = size() > capacidad;
+                if (expulsar) {
+                    expulsiones.incrementAndGet();
+                }
+                return expulsar;
+            }
+        };
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        final String clave = HuellaSimulacion.calcular(in);
+        if (clave == null) {
+            fallos.incrementAndGet();
+            return delegado.simular(in);
+        }
+
+        final RESTResponse<Tarificacion, Error> cacheada = obtener(clave);
+        if (cacheada != null) {
+            aciertos.incrementAndGet();
+            return cacheada;
+        }
+
+        fallos.incrementAndGet();
+        final RESTResponse<Tarificacion, Error> response = delegado.simular(in);
+        // Sólo se cachean las tarificaciones correctas; los errores se deben volver a consultar
+        if (response != null && !response.hasError() && response.out.getTarifas() != null) {
+            synchronized (entradas) {
+                entradas.put(clave, new Entrada(response, System.currentTimeMillis() + caducidadMillis));
+            }
+        }
+        return response;
+    }
+
+    private RESTResponse<Tarificacion, Error> obtener(final String clave) {
+        synchronized (entradas) {
+            final Entrada entrada = entradas.get(clave);
+            if (entrada == null) {
+                return null;
+            }
+            if (entrada.caducaEn <= System.currentTimeMillis()) {
+                entradas.remove(clave);
+                expulsiones.incrementAndGet();
+                return null;
+            }
+            return entrada.response;
+        }
+    }
+
+    /**
+     * Vacía la cache.
+     */
+    public void invalidar() {
+        synchronized (entradas) {
+            entradas.clear();
+        }
+    }
+
+    /**
+     * @return número de tarificaciones almacenadas
+     */
+    public int getTamano() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    /**
+     * @return número de simulaciones servidas desde la cache
+     */
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    /**
+     * @return número de simulaciones que han requerido llamada remota
+     */
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    /**
+     * @return número de tarificaciones expulsadas por capacidad o caducidad
+     */
+    public long getExpulsiones() {
+        return expulsiones.get();
+    }
+
+    private static final class Entrada {
+        private final RESTResponse<Tarificacion, Error> response;
+        private final long caducaEn;
+
+        private Entrada(final RESTResponse<Tarificacion, Error> response, final long caducaEn) {
+            this.response = response;
+            this.caducaEn = caducaEn;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package es.sanitas;
+
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosCobertura;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosPlanProducto;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Cobertura;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice inmutable de los productos de un plan, para no recorrer
+ * {@link DatosContratacionPlan#getProductos()} por cada asegurado y producto.
+ * <p>
+ * Guarda, por identificador de producto, sus datos y las coberturas obligatorias que se envían al
+ * servicio de simulación. Se construye una vez por plan y se puede compartir entre peticiones e
+ * hilos; las coberturas devueltas se comparten y no deben modificarse.
+ */
+public final class CatalogoPlan {
+
+    private static final Cobertura[] SIN_COBERTURAS = new Cobertura[0];
+
+    private final Map<Long, DatosPlanProducto> productos;
+    private final Map<Long, Cobertura[]> coberturasObligatorias;
+
+    private CatalogoPlan(final Map<Long, DatosPlanProducto> productos, final Map<Long, Cobertura[]> coberturasObligatorias) {
+        this.productos = productos;
+        this.coberturasObligatorias = coberturasObligatorias;
+    }
+
+    /**
+     * @param oDatosPlan plan a indexar
+     * @return índice de los productos del plan
+     */
+    public static CatalogoPlan de(final DatosContratacionPlan oDatosPlan) {
+        final Map<Long, DatosPlanProducto> productos = new HashMap<>();
+        final Map<Long, Cobertura[]> coberturas = new HashMap<>();
+        if (oDatosPlan != null && oDatosPlan.getProductos() != null) {
+            for (final DatosPlanProducto producto : oDatosPlan.getProductos()) {
+                // Si un producto se repite prevalece el primero, como en la búsqueda lineal
+                if (!productos.containsKey(producto.getIdProducto())) {
+                    productos.put(producto.getIdProducto(), producto);
+                    coberturas.put(producto.getIdProducto(), obligatorias(producto));
+                }
+            }
+        }
+        return new CatalogoPlan(Collections.unmodifiableMap(productos), Collections.unmodifiableMap(coberturas));
+    }
+
+    /**
+     * @param idProducto producto buscado
+     * @return datos del producto en el plan, o null si el plan no lo incluye
+     */
+    public DatosPlanProducto getProducto(final long idProducto) {
+        return productos.get(idProducto);
+    }
+
+    /**
+     * @param idProducto producto buscado
+     * @return coberturas obligatorias con capital mínimo del producto; vacío si el plan no lo incluye
+     */
+    public Cobertura[] getCoberturasObligatorias(final long idProducto) {
+        final Cobertura[] coberturas = coberturasObligatorias.get(idProducto);
+        return coberturas != null ? coberturas.clone() : SIN_COBERTURAS;
+    }
+
+    /**
+     * @return número de productos del plan
+     */
+    public int getNumeroProductos() {
+        return productos.size();
+    }
+
+    private static Cobertura[] obligatorias(final DatosPlanProducto producto) {
+        if (producto.getCoberturas() == null) {
+            return SIN_COBERTURAS;
+        }
+        final List<Cobertura> coberturas = new ArrayList<>();
+        for (final DatosCobertura oDatosCobertura : producto.getCoberturas()) {
+            if (oDatosCobertura.isSwObligatorio()
+                    && oDatosCobertura.getCapitalMinimo() != null
+                    && oDatosCobertura.getCapitalMinimo() > 0) {
+                final Cobertura cobertura = new Cobertura();
+                cobertura.setCapital(Double.valueOf(oDatosCobertura.getCapitalMinimo()));
+                cobertura.setIdCobertura(oDatosCobertura.getIdCobertura().intValue());
+                coberturas.add(cobertura);
+            }
+        }
+        return coberturas.toArray(SIN_COBERTURAS);
+    }
+}
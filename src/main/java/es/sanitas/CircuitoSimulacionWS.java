@@ -0,0 +1,314 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorador de {@link SimulacionWS} que deja de llamar al servicio cuando éste falla o responde
+ * lento de forma continuada (circuit breaker).
+ * <p>
+ * Se registra el resultado de las últimas llamadas en una ventana deslizante. Si la proporción de
+ * fallos o de llamadas lentas supera su umbral el circuito se abre y durante un tiempo las
+ * simulaciones fallan al momento con {@link CircuitoAbierto}, que {@link SimulacionCallable}
+ * convierte en {@link ExcepcionServicioNoDisponible}, en lugar de esperar el plazo completo. Pasado
+ * ese tiempo se dejan pasar unas llamadas de prueba: si todas van bien el circuito se cierra y si
+ * alguna falla se vuelve a abrir.
+ * <p>
+ * Se configura envolviendo el servicio real antes de pasarlo a
+ * {@link RealizarSimulacion#setServicioSimulacion(SimulacionWS)}; los cambios de estado se cuentan
+ * y se notifican al {@link ObservadorCircuito} configurado.
+ */
+public class CircuitoSimulacionWS implements SimulacionWS {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitoSimulacionWS.class);
+
+    private static final int VENTANA_POR_DEFECTO = 100;
+    private static final int MINIMO_LLAMADAS_POR_DEFECTO = 20;
+    private static final double UMBRAL_POR_DEFECTO = 0.5;
+    private static final long LENTA_POR_DEFECTO = TimeUnit.SECONDS.toMillis(5);
+    private static final long ABIERTO_POR_DEFECTO = TimeUnit.SECONDS.toMillis(10);
+    private static final int PRUEBAS_POR_DEFECTO = 3;
+
+    /**
+     * Estado del circuito.
+     */
+    public enum Estado {
+        /** Las llamadas pasan al servicio. */
+        CERRADO,
+        /** Las llamadas se rechazan sin llamar al servicio. */
+        ABIERTO,
+        /** Sólo pasan las llamadas de prueba. */
+        SEMIABIERTO
+    }
+
+    /**
+     * Recibe los cambios de estado del circuito, p.e. para publicarlos como métricas.
+     */
+    public interface ObservadorCircuito {
+
+        /**
+         * Se invoca con el circuito bloqueado, por lo que debe terminar enseguida.
+         *
+         * @param anterior estado que deja el circuito
+         * @param nuevo    estado al que pasa
+         */
+        void cambioEstado(Estado anterior, Estado nuevo);
+    }
+
+    /**
+     * Simulación rechazada sin llamar al servicio porque el circuito está abierto.
+     */
+    public static class CircuitoAbierto extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        CircuitoAbierto(final String msg) {
+            super(msg);
+        }
+    }
+
+    private final SimulacionWS delegado;
+    private final int minimoLlamadas;
+    private final double umbralFallos;
+    private final double umbralLentas;
+    private final long lentaNanos;
+    private final long abiertoMillis;
+    private final int llamadasPrueba;
+
+    private volatile Set<String> codigosFallo = Collections.emptySet();
+    private volatile ObservadorCircuito observador;
+
+    // Ventana deslizante de las últimas llamadas, protegida por this
+    private final boolean[] fallos;
+    private final boolean[] lentas;
+    private int posicion;
+    private int registradas;
+    private int numFallos;
+    private int numLentas;
+
+    private Estado estado = Estado.CERRADO;
+    private long abiertoHasta;
+    private int pruebasIniciadas;
+    private int pruebasCorrectas;
+
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong aperturas = new AtomicLong();
+    private final AtomicLong semiaperturas = new AtomicLong();
+    private final AtomicLong cierres = new AtomicLong();
+
+    public CircuitoSimulacionWS(final SimulacionWS delegado) {
+        this(delegado, VENTANA_POR_DEFECTO, MINIMO_LLAMADAS_POR_DEFECTO, UMBRAL_POR_DEFECTO, UMBRAL_POR_DEFECTO,
+                LENTA_POR_DEFECTO, ABIERTO_POR_DEFECTO, PRUEBAS_POR_DEFECTO);
+    }
+
+    /**
+     * @param delegado       servicio de simulación real
+     * @param ventana        número de llamadas recientes que se tienen en cuenta
+     * @param minimoLlamadas llamadas registradas necesarias para poder abrir el circuito
+     * @param umbralFallos   proporción de fallos (0-1) a partir de la que se abre el circuito
+     * @param umbralLentas   proporción de llamadas lentas (0-1) a partir de la que se abre el circuito
+     * @param lentaMillis    duración a partir de la que una llamada se considera lenta
+     * @param abiertoMillis  tiempo que el circuito permanece abierto antes de probar de nuevo
+     * @param llamadasPrueba llamadas de prueba que deben ir bien para cerrar el circuito
+     */
+    public CircuitoSimulacionWS(final SimulacionWS delegado, final int ventana, final int minimoLlamadas,
+                                final double umbralFallos, final double umbralLentas, final long lentaMillis,
+                                final long abiertoMillis, final int llamadasPrueba) {
+        if (ventana <= 0 || minimoLlamadas <= 0 || minimoLlamadas > ventana || llamadasPrueba <= 0) {
+            throw new IllegalArgumentException("La ventana, el minimo de llamadas y las pruebas deben ser positivos");
+        }
+        this.delegado = delegado;
+        this.minimoLlamadas = minimoLlamadas;
+        this.umbralFallos = umbralFallos;
+        this.umbralLentas = umbralLentas;
+        this.lentaNanos = TimeUnit.MILLISECONDS.toNanos(lentaMillis);
+        this.abiertoMillis = abiertoMillis;
+        this.llamadasPrueba = llamadasPrueba;
+        this.fallos = new boolean[ventana];
+        this.lentas = new boolean[ventana];
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        final boolean prueba = adquirir();
+        final long inicio = System.nanoTime();
+        boolean fallo = true;
+        try {
+            final RESTResponse<Tarificacion, Error> response = delegado.simular(in);
+            fallo = response == null
+                    || (response.hasError() && response.error != null && codigosFallo.contains(response.error.getCodigo()));
+            return response;
+        } catch (final RuntimeException e) {
+            // Una llamada cancelada por el plazo no es un fallo del servicio, aunque puede contar como lenta
+            fallo = !Thread.currentThread().isInterrupted();
+            throw e;
+        } finally {
+            registrar(prueba, fallo, System.nanoTime() - inicio >= lentaNanos);
+        }
+    }
+
+    /**
+     * @return true si la llamada es de prueba
+     * @throws CircuitoAbierto si el circuito no admite la llamada
+     */
+    private synchronized boolean adquirir() {
+        if (estado == Estado.ABIERTO) {
+            if (System.currentTimeMillis() < abiertoHasta) {
+                rechazadas.incrementAndGet();
+                throw new CircuitoAbierto("El servicio de simulacion no esta disponible. Por favor, intentelo de nuevo mas tarde.");
+            }
+            pruebasIniciadas = 0;
+            pruebasCorrectas = 0;
+            cambiarEstado(Estado.SEMIABIERTO);
+        }
+        if (estado == Estado.SEMIABIERTO) {
+            if (pruebasIniciadas >= llamadasPrueba) {
+                rechazadas.incrementAndGet();
+                throw new CircuitoAbierto("El servicio de simulacion se esta recuperando. Por favor, intentelo de nuevo mas tarde.");
+            }
+            pruebasIniciadas++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void registrar(final boolean prueba, final boolean fallo, final boolean lenta) {
+        if (prueba) {
+            if (estado != Estado.SEMIABIERTO) {
+                return;
+            }
+            if (fallo || lenta) {
+                LOG.warn("Falla la llamada de prueba al servicio de simulacion");
+                abrir();
+            } else if (++pruebasCorrectas >= llamadasPrueba) {
+                cambiarEstado(Estado.CERRADO);
+            }
+            return;
+        }
+        // Las llamadas que empezaron antes de abrirse el circuito ya no cuentan
+        if (estado != Estado.CERRADO) {
+            return;
+        }
+        if (registradas == fallos.length) {
+            numFallos -= fallos[posicion] ? 1 : 0;
+            numLentas -= lentas[posicion] ? 1 : 0;
+        } else {
+            registradas++;
+        }
+        fallos[posicion] = fallo;
+        lentas[posicion] = lenta;
+        numFallos += fallo ? 1 : 0;
+        numLentas += lenta ? 1 : 0;
+        posicion = (posicion + 1) % fallos.length;
+
+        if (registradas >= minimoLlamadas
+                && (numFallos >= umbralFallos * registradas || numLentas >= umbralLentas * registradas)) {
+            LOG.warn("El servicio de simulacion tiene " + numFallos + " fallos y " + numLentas
+                    + " llamadas lentas de las ultimas " + registradas);
+            abrir();
+        }
+    }
+
+    private void abrir() {
+        abiertoHasta = System.currentTimeMillis() + abiertoMillis;
+        // Al cerrarse de nuevo se empieza con la ventana vacía
+        vaciarVentana();
+        cambiarEstado(Estado.ABIERTO);
+    }
+
+    private void vaciarVentana() {
+        posicion = 0;
+        registradas = 0;
+        numFallos = 0;
+        numLentas = 0;
+    }
+
+    private void cambiarEstado(final Estado nuevo) {
+        final Estado anterior = estado;
+        estado = nuevo;
+        switch (nuevo) {
+            case ABIERTO:
+                aperturas.incrementAndGet();
+                LOG.warn("Se abre el circuito del servicio de simulacion durante " + abiertoMillis + " ms");
+                break;
+            case SEMIABIERTO:
+                semiaperturas.incrementAndGet();
+                LOG.info("Se prueba de nuevo el servicio de simulacion");
+                break;
+            case CERRADO:
+            default:
+                cierres.incrementAndGet();
+                LOG.info("Se cierra el circuito del servicio de simulacion");
+                break;
+        }
+        final ObservadorCircuito actual = observador;
+        if (actual != null) {
+            try {
+                actual.cambioEstado(anterior, nuevo);
+            } catch (final RuntimeException e) {
+                LOG.error("Error notificando el cambio de estado del circuito", e);
+            }
+        }
+    }
+
+    /**
+     * @param codigosFallo códigos de error del servicio que cuentan como fallo (p.e. errores
+     *                     internos); el resto de errores son respuestas válidas del servicio
+     */
+    public void setCodigosFallo(final Set<String> codigosFallo) {
+        this.codigosFallo = Collections.unmodifiableSet(new HashSet<>(codigosFallo));
+    }
+
+    /**
+     * @param observador receptor de los cambios de estado, puede ser null
+     */
+    public void setObservador(final ObservadorCircuito observador) {
+        this.observador = observador;
+    }
+
+    /**
+     * @return estado actual del circuito
+     */
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    /**
+     * @return simulaciones rechazadas sin llamar al servicio
+     */
+    public long getRechazadas() {
+        return rechazadas.get();
+    }
+
+    /**
+     * @return veces que se ha abierto el circuito
+     */
+    public long getAperturas() {
+        return aperturas.get();
+    }
+
+    /**
+     * @return veces que se ha pasado a llamadas de prueba
+     */
+    public long getSemiaperturas() {
+        return semiaperturas.get();
+    }
+
+    /**
+     * @return veces que se ha cerrado el circuito tras las pruebas
+     */
+    public long getCierres() {
+        return cierres.get();
+    }
+}
@@ -0,0 +1,134 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorador de {@link SimulacionWS} que agrupa las simulaciones idénticas que están en curso al
+ * mismo tiempo.
+ * <p>
+ * El primer hilo que pide una simulación realiza la llamada remota; el resto de hilos que piden
+ * una simulación con la misma {@link HuellaSimulacion} mientras la llamada no ha terminado esperan
+ * y comparten su respuesta. Una vez resuelta, la simulación deja de estar en curso y la siguiente
+ * petición vuelve a llamar al servicio (o a la cache, si se encadena con {@link CacheSimulacionWS}).
+ * Si la llamada falla porque se ha interrumpido al hilo que la hacía, los que esperaban no heredan
+ * el fallo: uno de ellos repite la llamada dentro de su propio plazo.
+ */
+public class CoalescenciaSimulacionWS implements SimulacionWS {
+
+    private final SimulacionWS delegado;
+    private final ConcurrentMap<String, FutureTask<RESTResponse<Tarificacion, Error>>> enCurso = new ConcurrentHashMap<>();
+
+    private final AtomicLong agrupadas = new AtomicLong();
+
+    public CoalescenciaSimulacionWS(final SimulacionWS delegado) {
+        this.delegado = delegado;
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        final String clave = HuellaSimulacion.calcular(in);
+        if (clave == null) {
+            return delegado.simular(in);
+        }
+
+        while (true) {
+            final FutureTask<RESTResponse<Tarificacion, Error>> tarea = new FutureTask<>(
+                    new Callable<RESTResponse<Tarificacion, Error>>() {
+                        @Override
+                        public RESTResponse<Tarificacion, Error> call() {
+                            try {
+                                return delegado.simular(in);
+                            } catch (final RuntimeException e) {
+                                // Si ha fallado porque se ha interrumpido al hilo que llama, el
+                                // error es sólo suyo y no se comparte con el resto
+                                if (Thread.currentThread().isInterrupted()) {
+                                    throw new InterrupcionLlamante(e);
+                                }
+                                throw e;
+                            }
+                        }
+                    });
+            final FutureTask<RESTResponse<Tarificacion, Error>> existente = enCurso.putIfAbsent(clave, tarea);
+            if (existente != null) {
+                agrupadas.incrementAndGet();
+                try {
+                    return esperar(existente);
+                } catch (final InterrupcionLlamante e) {
+                    // Se repite la simulación; el primero que vuelva a pedirla hace la llamada
+                    enCurso.remove(clave, existente);
+                    continue;
+                }
+            }
+
+            try {
+                tarea.run();
+            } finally {
+                enCurso.remove(clave, tarea);
+            }
+            try {
+                return esperar(tarea);
+            } catch (final InterrupcionLlamante e) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+    }
+
+    private RESTResponse<Tarificacion, Error> esperar(final FutureTask<RESTResponse<Tarificacion, Error>> tarea) {
+        final Plazo plazo = Plazo.actual();
+        try {
+            if (plazo == null) {
+                return tarea.get();
+            }
+            return tarea.get(plazo.getRestante(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            throw new IllegalStateException("Agotado el plazo esperando una simulacion en curso", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpida la espera de una simulacion en curso", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return número de simulaciones en curso en este momento
+     */
+    public int getEnCurso() {
+        return enCurso.size();
+    }
+
+    /**
+     * @return número de simulaciones que se han resuelto con la llamada de otro hilo
+     */
+    public long getAgrupadas() {
+        return agrupadas.get();
+    }
+
+    /**
+     * Fallo de una simulación cuyo hilo ha sido interrumpido (plazo o cancelación de quien la
+     * pidió); los hilos que esperaban esa misma simulación la repiten en lugar de fallar.
+     */
+    private static final class InterrupcionLlamante extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private InterrupcionLlamante(final RuntimeException causa) {
+            super(causa);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package es.sanitas;
+
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.PrimasPorProducto;
+import es.sanitas.soporte.Recibo;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Configuración del cálculo local de frecuencias de pago.
+ * <p>
+ * En muchos planes las frecuencias trimestral, semestral y anual son un múltiplo exacto de la
+ * mensual: número de meses de la frecuencia por un factor de descuento del plan. Sólo se deriva una
+ * frecuencia cuando su factor está configurado expresamente para el plan; el resto de frecuencias,
+ * y todas las de los planes marcados como no derivables, se siguen simulando en remoto. Así una
+ * configuración ausente o incompleta nunca da un precio sin el descuento de la frecuencia.
+ */
+public class DerivacionFrecuencias {
+
+    private volatile Map<Long, Map<FrecuenciaEnum, Double>> factoresPorPlan = Collections.emptyMap();
+    private volatile Set<Long> planesNoDerivables = Collections.emptySet();
+
+    /**
+     * @param idPlan     plan a tarificar
+     * @param frecuencia frecuencia a derivar
+     * @return true si la frecuencia del plan se puede derivar de la mensual: el plan no está marcado
+     * como no derivable y tiene configurado el factor de la frecuencia
+     */
+    public boolean esDerivable(final long idPlan, final FrecuenciaEnum frecuencia) {
+        return frecuencia != FrecuenciaEnum.MENSUAL && !planesNoDerivables.contains(idPlan)
+                && getFactor(idPlan, frecuencia) != null;
+    }
+
+    /**
+     * @param idPlan     plan a tarificar
+     * @param frecuencia frecuencia a derivar
+     * @return factor de descuento de la frecuencia en el plan; null si no está configurado
+     */
+    public Double getFactor(final long idPlan, final FrecuenciaEnum frecuencia) {
+        final Map<FrecuenciaEnum, Double> factores = factoresPorPlan.get(idPlan);
+        return factores != null ? factores.get(frecuencia) : null;
+    }
+
+    /**
+     * Deriva el resultado de una frecuencia a partir del resultado mensual. Los recibos son copias
+     * propias de los mensuales: su importe depende sólo del producto, no de la frecuencia.
+     *
+     * @param mensual resultado de la simulación mensual
+     * @param destino frecuencia a derivar
+     * @param idPlan  plan tarificado
+     * @return resultado de la frecuencia destino
+     * @throws IllegalArgumentException si la frecuencia no es derivable en el plan
+     */
+    public ResultadoFrecuencia derivar(final ResultadoFrecuencia mensual, final FrecuenciaEnum destino, final long idPlan) {
+        if (!esDerivable(idPlan, destino)) {
+            throw new IllegalArgumentException("La frecuencia " + destino + " no es derivable en el plan " + idPlan);
+        }
+        final double multiplicador = FrecuenciaEnum.obtenerMesesFrecuencia(destino) * getFactor(idPlan, destino);
+
+        final List<List<PrimasPorProducto>> primasDesglosadas = new ArrayList<>(mensual.getPrimasDesglosadas().size());
+        final double[][] primas = new double[mensual.getPrimas().length][];
+        for (int i = 0; i < primas.length; i++) {
+            final List<PrimasPorProducto> primasAsegurado = mensual.getPrimasDesglosadas().get(i);
+            final List<PrimasPorProducto> derivadas = new ArrayList<>(primasAsegurado.size());
+            primas[i] = new double[primasAsegurado.size()];
+            for (int j = 0; j < primas[i].length; j++) {
+                final PrimasPorProducto primaMensual = primasAsegurado.get(j);
+                // La prima mensual es el descuento mensual del producto
+                final double descuento = mensual.getPrimas()[i][j] * multiplicador;
+                primas[i][j] = RealizarSimulacion.primaFrecuencia(destino, descuento);
+                final PrimasPorProducto derivada = new PrimasPorProducto();
+                derivada.setCodigoProducto(primaMensual.getCodigoProducto());
+                derivada.setNombreProducto(primaMensual.getNombreProducto());
+                derivada.setObligatorio(primaMensual.getObligatorio());
+                derivada.setPrima(primas[i][j]);
+                derivadas.add(derivada);
+            }
+            primasDesglosadas.add(derivadas);
+        }
+
+        final Double precioConPromocion = mensual.getPrecioConPromocion() != null
+                ? mensual.getPrecioConPromocion() * multiplicador : null;
+        return new ResultadoFrecuencia(destino, primasDesglosadas, primas, mensual.getPromociones(), copiar(mensual.getRecibos()),
+                mensual.getDescuentoTotal() * multiplicador, mensual.getPagoTotal() * multiplicador,
+                precioConPromocion, mensual.getCodigoError());
+    }
+
+    /**
+     * Recibo expone un Calendar mutable, así que cada frecuencia necesita sus propios recibos.
+     */
+    private static List<Recibo> copiar(final List<Recibo> recibos) {
+        if (recibos == null) {
+            return null;
+        }
+        final List<Recibo> copias = new ArrayList<>(recibos.size());
+        for (final Recibo recibo : recibos) {
+            final Recibo copia = new Recibo();
+            if (recibo.getFechaEmision() != null) {
+                copia.setFechaEmision((Calendar) recibo.getFechaEmision().clone());
+            }
+            copia.setImporte(recibo.getImporte());
+            copias.add(copia);
+        }
+        return copias;
+    }
+
+    /**
+     * @param factoresPorPlan factor de descuento de cada frecuencia, por plan; las frecuencias sin
+     *                        factor se simulan en remoto
+     */
+    public void setFactoresPorPlan(final Map<Long, Map<FrecuenciaEnum, Double>> factoresPorPlan) {
+        final Map<Long, Map<FrecuenciaEnum, Double>> copia = new HashMap<>();
+        for (final Map.Entry<Long, Map<FrecuenciaEnum, Double>> plan : factoresPorPlan.entrySet()) {
+            final Map<FrecuenciaEnum, Double> factores = new EnumMap<>(FrecuenciaEnum.class);
+            factores.putAll(plan.getValue());
+            copia.put(plan.getKey(), Collections.unmodifiableMap(factores));
+        }
+        this.factoresPorPlan = Collections.unmodifiableMap(copia);
+    }
+
+    /**
+     * @param planesNoDerivables planes que deben simularse en remoto en todas sus frecuencias
+     */
+    public void setPlanesNoDerivables(final Set<Long> planesNoDerivables) {
+        this.planesNoDerivables = Collections.unmodifiableSet(new HashSet<>(planesNoDerivables));
+    }
+}
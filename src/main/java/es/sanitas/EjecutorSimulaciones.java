@@ -0,0 +1,156 @@
+package es.sanitas;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecutor de las llamadas al servicio de simulación.
+ * <p>
+ * Pensado para declararse como bean de Spring e inyectarse en uno o varios {@link RealizarSimulacion}.
+ * El tamaño del pool, la cola y la política de rechazo son configurables, los hilos tienen nombre
+ * y el pool se apaga de forma ordenada al cerrarse el contexto.
+ */
+public class EjecutorSimulaciones implements Executor, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EjecutorSimulaciones.class);
+
+    private static final int HILOS_BASE = 4;
+    private static final int HILOS_MAXIMOS = 16;
+    private static final int CAPACIDAD_COLA = 100;
+    private static final String PREFIJO_HILOS = "simulacion";
+    private static final long MANTENIMIENTO_HILOS_SEGUNDOS = 60;
+    private static final long ESPERA_APAGADO_SEGUNDOS = 30;
+
+    /**
+     * Qué hacer con una simulación cuando el pool y la cola están llenos.
+     */
+    public enum PoliticaRechazo {
+        /** Se lanza RejectedExecutionException. */
+        ABORTAR,
+        /** La simulación se ejecuta en el hilo que la envía. */
+        EJECUTAR_EN_LLAMANTE,
+        /** La simulación se descarta; quien la espera termina por timeout. */
+        DESCARTAR
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong rechazadas = new AtomicLong();
+
+    public EjecutorSimulaciones() {
+        this(HILOS_BASE, HILOS_MAXIMOS, CAPACIDAD_COLA, PoliticaRechazo.ABORTAR, PREFIJO_HILOS);
+    }
+
+    /**
+     * @param hilosBase     hilos que se mantienen siempre vivos
+     * @param hilosMaximos  hilos máximos cuando la cola está llena
+     * @param capacidadCola simulaciones que pueden esperar en cola
+     * @param politica      política cuando pool y cola están llenos
+     * @param prefijoHilos  prefijo del nombre de los hilos
+     */
+    public EjecutorSimulaciones(final int hilosBase, final int hilosMaximos, final int capacidadCola,
+                                final PoliticaRechazo politica, final String prefijoHilos) {
+        this.pool = new ThreadPoolExecutor(hilosBase, hilosMaximos,
+                MANTENIMIENTO_HILOS_SEGUNDOS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(capacidadCola),
+                new FactoriaHilos(prefijoHilos),
+                new ContadorRechazos(manejador(politica)));
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        pool.execute(command);
+    }
+
+    /**
+     * Deja de aceptar simulaciones y espera a que terminen las que están en curso.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        pool.shutdown();
+        if (!pool.awaitTermination(ESPERA_APAGADO_SEGUNDOS, TimeUnit.SECONDS)) {
+            LOG.warn("El pool de simulaciones no ha terminado a tiempo, se interrumpen "
+                    + pool.getActiveCount() + " simulaciones en curso");
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return hilos ejecutando una simulación en este momento
+     */
+    public int getHilosActivos() {
+        return pool.getActiveCount();
+    }
+
+    /**
+     * @return hilos que tiene el pool en este momento
+     */
+    public int getTamanoPool() {
+        return pool.getPoolSize();
+    }
+
+    /**
+     * @return simulaciones esperando en cola
+     */
+    public int getTareasEnCola() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * @return simulaciones rechazadas desde el arranque
+     */
+    public long getRechazadas() {
+        return rechazadas.get();
+    }
+
+    private static RejectedExecutionHandler manejador(final PoliticaRechazo politica) {
+        switch (politica) {
+            case EJECUTAR_EN_LLAMANTE:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case DESCARTAR:
+                return new ThreadPoolExecutor.DiscardPolicy();
+            case ABORTAR:
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    private final class ContadorRechazos implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegado;
+
+        private ContadorRechazos(final RejectedExecutionHandler delegado) {
+            this.delegado = delegado;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            rechazadas.incrementAndGet();
+            delegado.rejectedExecution(r, executor);
+        }
+    }
+
+    private static final class FactoriaHilos implements ThreadFactory {
+        private final String prefijo;
+        private final AtomicInteger contador = new AtomicInteger();
+
+        private FactoriaHilos(final String prefijo) {
+            this.prefijo = prefijo;
+        }
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread hilo = new Thread(r, prefijo + "-" + contador.incrementAndGet());
+            hilo.setDaemon(false);
+            return hilo;
+        }
+    }
+}
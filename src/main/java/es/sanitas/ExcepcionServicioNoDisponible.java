@@ -0,0 +1,17 @@
+package es.sanitas;
+
+import es.sanitas.soporte.ExcepcionContratacion;
+
+/**
+ * La simulación no se ha enviado porque el servicio de simulación se considera caído
+ * ({@link CircuitoSimulacionWS} abierto). El presupuesto puede volver a pedirse pasados unos
+ * segundos.
+ */
+public class ExcepcionServicioNoDisponible extends ExcepcionContratacion {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExcepcionServicioNoDisponible(final String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,19 @@
+package es.sanitas;
+
+import es.sanitas.soporte.ExcepcionContratacion;
+
+/**
+ * El servicio de simulación ha rechazado la petición con un error que {@link PoliticaReintentos}
+ * no permite repetir: volver a enviarla, o esperar al resto de frecuencias, no cambia el resultado.
+ * <p>
+ * No se usa para los plazos agotados, las interrupciones ni los errores transitorios que han
+ * consumido sus intentos.
+ */
+public class ExcepcionSimulacionRechazada extends ExcepcionContratacion {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExcepcionSimulacionRechazada(final String msg) {
+        super(msg);
+    }
+}
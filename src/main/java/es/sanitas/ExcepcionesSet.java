@@ -0,0 +1,106 @@
+package es.sanitas;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Excepciones de contratación de un plan o mediador, con los códigos numéricos de
+ * {@link es.sanitas.soporte.StaticVarsContratacion} guardados en un BitSet de tamaño acotado.
+ * <p>
+ * Se construye una vez al crear la sesión y se guarda en los valores de sesión bajo
+ * {@code StaticVarsContratacion.LIST_EXCEPCIONES}, en lugar de la lista de códigos; la simulación
+ * admite las dos formas. Comprobar un código no genera objetos.
+ */
+public final class ExcepcionesSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Los códigos numéricos a partir de este valor se guardan como texto para no agrandar el BitSet. */
+    static final int MAXIMO_NUMERICO = 1024;
+
+    private final BitSet numericas;
+    /** Códigos que no son un número menor que {@link #MAXIMO_NUMERICO} sin ceros a la izquierda; se comparan como texto. */
+    private final Set<String> otras;
+
+    private ExcepcionesSet(final BitSet numericas, final Set<String> otras) {
+        this.numericas = numericas;
+        this.otras = otras;
+    }
+
+    /**
+     * @param codigos lista de excepciones tal como la devuelve el servicio; puede ser null
+     * @return conjunto con los mismos códigos
+     */
+    public static ExcepcionesSet de(final Collection<String> codigos) {
+        final BitSet numericas = new BitSet();
+        final Set<String> otras = new HashSet<>();
+        if (codigos != null) {
+            for (final String codigo : codigos) {
+                final int numero = numero(codigo);
+                if (numero >= 0) {
+                    numericas.set(numero);
+                } else if (codigo != null) {
+                    otras.add(codigo);
+                }
+            }
+        }
+        return new ExcepcionesSet(numericas, otras.isEmpty() ? Collections.<String>emptySet() : otras);
+    }
+
+    /**
+     * @param codigo código de la excepción
+     * @return true si la excepción está en el conjunto
+     */
+    public boolean contiene(final String codigo) {
+        if (codigo == null) {
+            return false;
+        }
+        final int numero = numero(codigo);
+        return numero >= 0 ? numericas.get(numero) : otras.contains(codigo);
+    }
+
+    /**
+     * @param codigo código numérico de la excepción
+     * @return true si la excepción está en el conjunto
+     */
+    public boolean contiene(final int codigo) {
+        if (codigo >= 0 && codigo < MAXIMO_NUMERICO) {
+            return numericas.get(codigo);
+        }
+        return !otras.isEmpty() && otras.contains(String.valueOf(codigo));
+    }
+
+    /**
+     * @return número de excepciones del conjunto
+     */
+    public int getTamano() {
+        return numericas.cardinality() + otras.size();
+    }
+
+    /**
+     * Convierte el código en número sin crear objetos.
+     *
+     * @return el número, o -1 si el código no es un entero entre 0 y {@link #MAXIMO_NUMERICO}
+     * (excluido) escrito sin ceros a la izquierda (p.e. "049" se compara como texto, igual que en
+     * la lista original)
+     */
+    private static int numero(final String codigo) {
+        if (codigo == null || codigo.isEmpty() || codigo.length() > 4
+                || (codigo.length() > 1 && codigo.charAt(0) == '0')) {
+            return -1;
+        }
+        int numero = 0;
+        for (int i = 0; i < codigo.length(); i++) {
+            final char c = codigo.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            numero = numero * 10 + (c - '0');
+        }
+        return numero < MAXIMO_NUMERICO ? numero : -1;
+    }
+}
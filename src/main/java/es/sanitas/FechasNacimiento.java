@@ -0,0 +1,70 @@
+package es.sanitas;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Convierte edades en la fecha de nacimiento que se envía al servicio de simulación: el día 1 del
+ * mes actual de hace tantos años como la edad, en formato dd/MM/yyyy.
+ * <p>
+ * Las fechas de las edades de 0 a {@value #EDAD_MAXIMA} se calculan una vez al día y se sirven de
+ * una tabla; la tabla se recalcula en la primera conversión después de medianoche.
+ */
+final class FechasNacimiento {
+
+    static final int EDAD_MAXIMA = 120;
+
+    private static final DateTimeFormatter FORMATO = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private static final FechasNacimiento SISTEMA = new FechasNacimiento(Clock.systemDefaultZone());
+
+    private final Clock reloj;
+    private volatile Tabla tabla;
+
+    FechasNacimiento(final Clock reloj) {
+        this.reloj = reloj;
+    }
+
+    /**
+     * @return conversor con el reloj y la zona horaria del sistema
+     */
+    static FechasNacimiento sistema() {
+        return SISTEMA;
+    }
+
+    /**
+     * @param edad edad en años
+     * @return fecha de nacimiento en formato dd/MM/yyyy
+     */
+    String desdeEdad(final int edad) {
+        Tabla actual = tabla;
+        if (actual == null || reloj.millis() >= actual.caducaEn) {
+            // Si dos hilos coinciden calculan la misma tabla; cualquiera de las dos es válida
+            actual = new Tabla(LocalDate.now(reloj));
+            tabla = actual;
+        }
+        if (edad < 0 || edad > EDAD_MAXIMA) {
+            return formatear(actual.hoy, edad);
+        }
+        return actual.fechas[edad];
+    }
+
+    private static String formatear(final LocalDate hoy, final int edad) {
+        return FORMATO.format(hoy.minusYears(edad).withDayOfMonth(1));
+    }
+
+    private final class Tabla {
+        private final LocalDate hoy;
+        private final long caducaEn;
+        private final String[] fechas = new String[EDAD_MAXIMA + 1];
+
+        private Tabla(final LocalDate hoy) {
+            this.hoy = hoy;
+            this.caducaEn = hoy.plusDays(1).atStartOfDay(reloj.getZone()).toInstant().toEpochMilli();
+            for (int edad = 0; edad <= EDAD_MAXIMA; edad++) {
+                fechas[edad] = formatear(hoy, edad);
+            }
+        }
+    }
+}
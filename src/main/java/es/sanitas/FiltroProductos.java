@@ -0,0 +1,52 @@
+package es.sanitas;
+
+import java.util.BitSet;
+
+/**
+ * Productos que no se tarifican en una simulación, calculados una sola vez por petición.
+ * <p>
+ * Los productos 389 (ECI colectivos) y 670 (farmacia) se excluyen según las excepciones de
+ * promoción y según si algún asegurado tiene tarjeta; el resultado sólo depende de la petición, así
+ * que se resuelve al empezar y cada producto se comprueba con una consulta al bitset.
+ */
+final class FiltroProductos {
+
+    static final int PRODUCTO_ECI_COLECTIVOS = 389;
+    static final int PRODUCTO_FARMACIA = 670;
+
+    private static final FiltroProductos TODOS = new FiltroProductos(new BitSet());
+
+    private final BitSet excluidos;
+
+    private FiltroProductos(final BitSet excluidos) {
+        this.excluidos = excluidos;
+    }
+
+    /**
+     * @param excepcionEci      si la promoción ECI colectivos está en las excepciones
+     * @param excepcionFarmacia si la promoción farmacia está en las excepciones
+     * @param hayTarjetas       si el titular o algún asegurado tiene tarjeta de Sanitas
+     * @return filtro de la petición
+     */
+    static FiltroProductos de(final boolean excepcionEci, final boolean excepcionFarmacia, final boolean hayTarjetas) {
+        // Se conserva la condición original, en la que sin la excepción de farmacia o con tarjeta se
+        // tarifican todos los productos, también el de ECI colectivos
+        if (hayTarjetas || !excepcionFarmacia) {
+            return TODOS;
+        }
+        final BitSet excluidos = new BitSet(PRODUCTO_FARMACIA + 1);
+        excluidos.set(PRODUCTO_FARMACIA);
+        if (excepcionEci) {
+            excluidos.set(PRODUCTO_ECI_COLECTIVOS);
+        }
+        return new FiltroProductos(excluidos);
+    }
+
+    /**
+     * @param idProducto producto tarificado por el servicio
+     * @return true si el producto debe mostrarse en la simulación
+     */
+    boolean esTarificable(final long idProducto) {
+        return idProducto < 0 || idProducto > Integer.MAX_VALUE || !excluidos.get((int) idProducto);
+    }
+}
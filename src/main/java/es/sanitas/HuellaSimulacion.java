@@ -0,0 +1,64 @@
+package es.sanitas;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calcula una huella estable de una {@link Simulacion} completamente construida (operación,
+ * InfoContratacion, beneficiarios, productos, coberturas, tier y promociones).
+ * <p>
+ * Dos simulaciones con el mismo contenido producen la misma huella, independientemente del orden
+ * en que se hayan asignado sus propiedades.
+ */
+public final class HuellaSimulacion {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HuellaSimulacion.class);
+
+    private static final String ALGORITMO = "SHA-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private HuellaSimulacion() {
+    }
+
+    /**
+     * Calcula la huella de la simulación.
+     *
+     * @param in simulación a resumir
+     * @return huella en hexadecimal, o null si la simulación no se puede serializar
+     */
+    public static String calcular(final Simulacion in) {
+        if (in == null) {
+            return null;
+        }
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(ALGORITMO);
+            return toHex(digest.digest(MAPPER.writeValueAsBytes(in)));
+        } catch (final JsonProcessingException e) {
+            LOG.warn("No se ha podido calcular la huella de la simulacion", e);
+        } catch (final NoSuchAlgorithmException e) {
+            LOG.error("Algoritmo de resumen no disponible: " + ALGORITMO, e);
+        }
+        return null;
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+}
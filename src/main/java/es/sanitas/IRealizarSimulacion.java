@@ -6,10 +6,56 @@ import wscontratacion.contratacion.fuentes.parametros.DatosAlta;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Simulación de precios de una póliza. El resultado tipado ({@link ResultadoSimulacion}) sólo lo
+ * ofrece {@link RealizarSimulacion}; el Map no basta para construirlo.
+ */
 public interface IRealizarSimulacion {
 
     Map<String, Object> realizarSimulacion(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
                                            final List<BeneficiarioPolizas> lBeneficiarios,
                                            final boolean desglosar, final Map<String, Object> hmValores) throws Exception;
+
+    /**
+     * Igual que {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map)} pero entregando el
+     * resultado de cada frecuencia al receptor en cuanto termina su simulación.
+     * <p>
+     * Por defecto simula sin resultados parciales: el receptor no recibe nada.
+     */
+    default Map<String, Object> realizarSimulacion(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                   final List<BeneficiarioPolizas> lBeneficiarios,
+                                                   final boolean desglosar, final Map<String, Object> hmValores,
+                                                   final ReceptorSimulacion receptor) throws Exception {
+        return realizarSimulacion(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores);
+    }
+
+    /**
+     * Igual que {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map)} pero sin bloquear
+     * el hilo que la invoca.
+     */
+    default CompletableFuture<Map<String, Object>> realizarSimulacionAsync(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                                          final List<BeneficiarioPolizas> lBeneficiarios,
+                                                                          final boolean desglosar, final Map<String, Object> hmValores) {
+        return realizarSimulacionAsync(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, null);
+    }
+
+    /**
+     * Versión asíncrona de {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map, ReceptorSimulacion)}.
+     * <p>
+     * Por defecto simula en el hilo que la invoca y devuelve el futuro ya completado.
+     */
+    default CompletableFuture<Map<String, Object>> realizarSimulacionAsync(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                                          final List<BeneficiarioPolizas> lBeneficiarios,
+                                                                          final boolean desglosar, final Map<String, Object> hmValores,
+                                                                          final ReceptorSimulacion receptor) {
+        final CompletableFuture<Map<String, Object>> resultado = new CompletableFuture<>();
+        try {
+            resultado.complete(realizarSimulacion(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, receptor));
+        } catch (final Exception e) {
+            resultado.completeExceptionally(e);
+        }
+        return resultado;
+    }
 }
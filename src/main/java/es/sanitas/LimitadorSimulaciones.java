@@ -0,0 +1,224 @@
+package es.sanitas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Límite adaptativo de las llamadas al servicio de simulación en curso en todo el proceso.
+ * <p>
+ * El límite sigue un esquema AIMD: cada llamada que termina bien por debajo de la latencia objetivo
+ * lo sube en 1/límite (aproximadamente uno por cada ronda de llamadas) y una llamada lenta o
+ * fallida lo multiplica por un factor de reducción. Las llamadas que ya estaban en curso cuando se
+ * redujo el límite no lo vuelven a reducir: una ráfaga de timeouts simultáneos es una sola señal de
+ * sobrecarga, no una por llamada. Así la concurrencia crece hasta lo que el
+ * servicio soporta y baja en cuanto empieza a degradarse. Las simulaciones que no caben esperan en
+ * una cola acotada, como mucho hasta su {@link Plazo}; si la cola está llena o se agota la espera se
+ * rechazan con {@link ExcepcionServicioNoDisponible}.
+ * <p>
+ * Pensado para declararse como bean de Spring e inyectarse en los {@link RealizarSimulacion}.
+ */
+public class LimitadorSimulaciones {
+
+    private static final int LIMITE_INICIAL_POR_DEFECTO = 10;
+    private static final int LIMITE_MINIMO_POR_DEFECTO = 1;
+    private static final int LIMITE_MAXIMO_POR_DEFECTO = 200;
+    private static final long LATENCIA_OBJETIVO_POR_DEFECTO = TimeUnit.SECONDS.toMillis(2);
+    private static final int COLA_POR_DEFECTO = 100;
+    private static final long ESPERA_POR_DEFECTO = TimeUnit.SECONDS.toMillis(1);
+    private static final double FACTOR_REDUCCION = 0.9;
+
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    private final long latenciaObjetivoNanos;
+    private final int capacidadCola;
+    private final long esperaMaximaNanos;
+
+    private final ReentrantLock bloqueo = new ReentrantLock();
+    private final Condition hayHueco = bloqueo.newCondition();
+    private double limite;
+    private int enCurso;
+    private int enCola;
+    private long ultimaReduccion = System.nanoTime();
+
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong reducciones = new AtomicLong();
+
+    public LimitadorSimulaciones() {
+        this(LIMITE_INICIAL_POR_DEFECTO, LIMITE_MINIMO_POR_DEFECTO, LIMITE_MAXIMO_POR_DEFECTO,
+                LATENCIA_OBJETIVO_POR_DEFECTO, COLA_POR_DEFECTO, ESPERA_POR_DEFECTO);
+    }
+
+    /**
+     * @param limiteInicial          llamadas simultáneas permitidas al arrancar
+     * @param limiteMinimo           límite por debajo del que nunca se baja
+     * @param limiteMaximo           límite por encima del que nunca se sube
+     * @param latenciaObjetivoMillis latencia a partir de la que una llamada reduce el límite
+     * @param capacidadCola          simulaciones que pueden esperar un hueco
+     * @param esperaMaximaMillis     espera máxima de una simulación en la cola
+     */
+    public LimitadorSimulaciones(final int limiteInicial, final int limiteMinimo, final int limiteMaximo,
+                                 final long latenciaObjetivoMillis, final int capacidadCola,
+                                 final long esperaMaximaMillis) {
+        if (limiteMinimo <= 0 || limiteInicial < limiteMinimo || limiteMaximo < limiteInicial || capacidadCola < 0) {
+            throw new IllegalArgumentException("Los limites deben ser positivos y estar ordenados");
+        }
+        this.limite = limiteInicial;
+        this.limiteMinimo = limiteMinimo;
+        this.limiteMaximo = limiteMaximo;
+        this.latenciaObjetivoNanos = TimeUnit.MILLISECONDS.toNanos(latenciaObjetivoMillis);
+        this.capacidadCola = capacidadCola;
+        this.esperaMaximaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMaximaMillis);
+    }
+
+    /**
+     * Obtiene permiso para llamar al servicio, esperando en la cola si hace falta.
+     *
+     * @param plazo plazo de la simulación, puede ser null
+     * @return permiso que hay que liberar al terminar la llamada
+     * @throws ExcepcionServicioNoDisponible si la cola está llena o no queda hueco a tiempo
+     * @throws InterruptedException          si se interrumpe la espera
+     */
+    public Permiso adquirir(final Plazo plazo) throws ExcepcionServicioNoDisponible, InterruptedException {
+        bloqueo.lockInterruptibly();
+        try {
+            if (enCurso < (int) limite) {
+                enCurso++;
+                return new Permiso();
+            }
+            if (enCola >= capacidadCola) {
+                throw rechazar();
+            }
+            long nanos = plazo == null ? esperaMaximaNanos
+                    : Math.min(esperaMaximaNanos, plazo.getRestante(TimeUnit.NANOSECONDS));
+            enCola++;
+            try {
+                while (enCurso >= (int) limite) {
+                    if (nanos <= 0) {
+                        throw rechazar();
+                    }
+                    nanos = hayHueco.awaitNanos(nanos);
+                }
+                enCurso++;
+                return new Permiso();
+            } finally {
+                enCola--;
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private ExcepcionServicioNoDisponible rechazar() {
+        rechazadas.incrementAndGet();
+        return new ExcepcionServicioNoDisponible("Hay demasiadas simulaciones en curso. Por favor, inténtelo de nuevo más tarde.");
+    }
+
+    private void liberar(final long inicio, final boolean correcta, final boolean medir) {
+        final long fin = System.nanoTime();
+        bloqueo.lock();
+        try {
+            enCurso--;
+            if (medir) {
+                if (!correcta || fin - inicio > latenciaObjetivoNanos) {
+                    // Una sola reducción por cada tanda de llamadas en curso
+                    if (inicio - ultimaReduccion >= 0) {
+                        limite = Math.max(limiteMinimo, limite * FACTOR_REDUCCION);
+                        ultimaReduccion = fin;
+                        reducciones.incrementAndGet();
+                    }
+                } else if (enCurso + 1 >= limite / 2) {
+                    // Sólo se sube si el límite se está usando; sin carga no dice nada del servicio
+                    limite = Math.min(limiteMaximo, limite + 1 / limite);
+                }
+            }
+            hayHueco.signalAll();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @return llamadas simultáneas permitidas en este momento
+     */
+    public int getLimite() {
+        bloqueo.lock();
+        try {
+            return (int) limite;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @return llamadas en curso
+     */
+    public int getEnCurso() {
+        bloqueo.lock();
+        try {
+            return enCurso;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @return simulaciones esperando un hueco
+     */
+    public int getEnCola() {
+        bloqueo.lock();
+        try {
+            return enCola;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @return simulaciones rechazadas por cola llena o espera agotada
+     */
+    public long getRechazadas() {
+        return rechazadas.get();
+    }
+
+    /**
+     * @return veces que se ha reducido el límite
+     */
+    public long getReducciones() {
+        return reducciones.get();
+    }
+
+    /**
+     * Hueco para una llamada al servicio. Se libera una sola vez.
+     */
+    public final class Permiso {
+        private final long inicio = System.nanoTime();
+        private boolean liberado;
+
+        private Permiso() {
+        }
+
+        /**
+         * Libera el hueco y ajusta el límite con la latencia de la llamada.
+         *
+         * @param correcta false si la llamada ha fallado o se ha cancelado
+         */
+        public void liberar(final boolean correcta) {
+            if (!liberado) {
+                liberado = true;
+                LimitadorSimulaciones.this.liberar(inicio, correcta, true);
+            }
+        }
+
+        /**
+         * Libera el hueco sin ajustar el límite, para llamadas que no han llegado al servicio.
+         */
+        public void descartar() {
+            if (!liberado) {
+                liberado = true;
+                LimitadorSimulaciones.this.liberar(inicio, true, false);
+            }
+        }
+    }
+}
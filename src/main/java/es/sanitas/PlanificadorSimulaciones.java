@@ -0,0 +1,344 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool de simulaciones con compartimentos (bulkheads) por tipo de operación y por prioridad.
+ * <p>
+ * Cada simulación se envía con su operación ({@code StaticVarsContratacion.ALTA_POLIZA},
+ * {@code INCLUSION_BENEFICIARIO}) y su {@link Prioridad}. Cuando un hilo queda libre toma la
+ * simulación más antigua de la prioridad más alta que tenga hueco, respetando el máximo de hilos
+ * de su prioridad y de su operación; así una ráfaga de inclusiones lentas o de recálculos por lotes
+ * no deja sin hilos a las altas interactivas. Cada prioridad tiene además su propia cola acotada;
+ * si está llena la simulación se rechaza con RejectedExecutionException.
+ * <p>
+ * Sin configuración, sólo {@link Prioridad#INTERACTIVA} y las altas pueden ocupar todo el pool:
+ * {@link Prioridad#MEDIADOR} y las inclusiones de beneficiarios se limitan a la mitad de los hilos
+ * y {@link Prioridad#LOTE} a un cuarto.
+ * <p>
+ * Pensado para declararse como bean de Spring, con los límites de cada despliegue en los mapas de
+ * configuración, e inyectarse en los {@link RealizarSimulacion} de cada canal.
+ */
+public class PlanificadorSimulaciones implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanificadorSimulaciones.class);
+
+    private static final int HILOS_POR_DEFECTO = 16;
+    private static final int CAPACIDAD_COLA = 100;
+    private static final String PREFIJO_HILOS = "simulacion";
+    private static final long ESPERA_APAGADO_SEGUNDOS = 30;
+
+    /**
+     * Prioridad de una simulación según el canal que la pide, de mayor a menor.
+     */
+    public enum Prioridad {
+        /** Presupuestos que un cliente está esperando en la web. */
+        INTERACTIVA,
+        /** Presupuestos del portal de mediadores. */
+        MEDIADOR,
+        /** Recálculos masivos de back-office. */
+        LOTE
+    }
+
+    private static final Prioridad[] PRIORIDADES = Prioridad.values();
+
+    private final int hilos;
+    private final List<Thread> trabajadores;
+
+    private final ReentrantLock bloqueo = new ReentrantLock();
+    private final Condition hayTrabajo = bloqueo.newCondition();
+    private final List<ArrayDeque<Tarea>> colas = new ArrayList<>(PRIORIDADES.length);
+    private final int[] enCursoPrioridad = new int[PRIORIDADES.length];
+    private final Map<Integer, Integer> enCursoOperacion = new HashMap<>();
+    private boolean apagado;
+
+    private volatile int[] concurrenciaPrioridad;
+    private volatile int[] capacidadColaPrioridad;
+    private volatile Map<Integer, Integer> concurrenciaOperacion = Collections.emptyMap();
+
+    private final AtomicLong[] rechazadas = new AtomicLong[PRIORIDADES.length];
+
+    public PlanificadorSimulaciones() {
+        this(HILOS_POR_DEFECTO, PREFIJO_HILOS);
+    }
+
+    /**
+     * @param hilos        hilos del pool, compartidos por todos los compartimentos
+     * @param prefijoHilos prefijo del nombre de los hilos
+     */
+    public PlanificadorSimulaciones(final int hilos, final String prefijoHilos) {
+        if (hilos <= 0) {
+            throw new IllegalArgumentException("El numero de hilos debe ser positivo");
+        }
+        this.hilos = hilos;
+        final int[] concurrencia = new int[PRIORIDADES.length];
+        final int[] capacidad = new int[PRIORIDADES.length];
+        for (final Prioridad prioridad : PRIORIDADES) {
+            colas.add(new ArrayDeque<Tarea>());
+            rechazadas[prioridad.ordinal()] = new AtomicLong();
+            concurrencia[prioridad.ordinal()] = hilos;
+            capacidad[prioridad.ordinal()] = CAPACIDAD_COLA;
+        }
+        // Por defecto siempre quedan hilos para las altas interactivas
+        concurrencia[Prioridad.MEDIADOR.ordinal()] = Math.max(1, hilos / 2);
+        concurrencia[Prioridad.LOTE.ordinal()] = Math.max(1, hilos / 4);
+        this.concurrenciaPrioridad = concurrencia;
+        this.capacidadColaPrioridad = capacidad;
+        this.concurrenciaOperacion = Collections.singletonMap(
+                StaticVarsContratacion.INCLUSION_BENEFICIARIO, Math.max(1, hilos / 2));
+
+        final List<Thread> creados = new ArrayList<>(hilos);
+        for (int i = 1; i <= hilos; i++) {
+            final Thread hilo = new Thread(this::trabajar, prefijoHilos + "-" + i);
+            hilo.setDaemon(false);
+            creados.add(hilo);
+        }
+        this.trabajadores = Collections.unmodifiableList(creados);
+        for (final Thread hilo : trabajadores) {
+            hilo.start();
+        }
+    }
+
+    /**
+     * @param operacion operación de las simulaciones
+     * @param prioridad prioridad de las simulaciones
+     * @return ejecutor que envía las tareas al compartimento indicado
+     */
+    public Executor ejecutor(final int operacion, final Prioridad prioridad) {
+        return tarea -> encolar(new Tarea(tarea, operacion, prioridad));
+    }
+
+    private void encolar(final Tarea tarea) {
+        final int indice = tarea.prioridad.ordinal();
+        bloqueo.lock();
+        try {
+            if (apagado || colas.get(indice).size() >= capacidadColaPrioridad[indice]) {
+                rechazadas[indice].incrementAndGet();
+                throw new RejectedExecutionException("Cola de simulaciones " + tarea.prioridad + " llena");
+            }
+            colas.get(indice).addLast(tarea);
+            hayTrabajo.signal();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private void trabajar() {
+        while (true) {
+            // La cancelación de la tarea anterior interrumpe el hilo, no debe afectar a la siguiente
+            Thread.interrupted();
+            final Tarea tarea = siguiente();
+            if (tarea == null) {
+                return;
+            }
+            try {
+                tarea.tarea.run();
+            } catch (final RuntimeException e) {
+                LOG.error("Error no controlado en una simulacion", e);
+            } finally {
+                terminar(tarea);
+            }
+        }
+    }
+
+    /**
+     * @return la siguiente tarea que cabe en su compartimento, o null si el pool se ha apagado y
+     * no queda nada en cola
+     */
+    private Tarea siguiente() {
+        bloqueo.lock();
+        try {
+            while (true) {
+                boolean pendientes = false;
+                for (final Prioridad prioridad : PRIORIDADES) {
+                    final ArrayDeque<Tarea> cola = colas.get(prioridad.ordinal());
+                    pendientes |= !cola.isEmpty();
+                    if (cola.isEmpty() || enCursoPrioridad[prioridad.ordinal()] >= concurrenciaPrioridad[prioridad.ordinal()]) {
+                        continue;
+                    }
+                    for (final Iterator<Tarea> it = cola.iterator(); it.hasNext(); ) {
+                        final Tarea tarea = it.next();
+                        final int enCurso = enCursoOperacion(tarea.operacion);
+                        if (enCurso < concurrenciaOperacion(tarea.operacion)) {
+                            it.remove();
+                            enCursoPrioridad[prioridad.ordinal()]++;
+                            enCursoOperacion.put(tarea.operacion, enCurso + 1);
+                            return tarea;
+                        }
+                    }
+                }
+                if (apagado && !pendientes) {
+                    return null;
+                }
+                hayTrabajo.awaitUninterruptibly();
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private void terminar(final Tarea tarea) {
+        bloqueo.lock();
+        try {
+            enCursoPrioridad[tarea.prioridad.ordinal()]--;
+            enCursoOperacion.put(tarea.operacion, enCursoOperacion(tarea.operacion) - 1);
+            // Puede haber quedado hueco para una tarea de otro compartimento
+            hayTrabajo.signalAll();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    private int enCursoOperacion(final int operacion) {
+        final Integer enCurso = enCursoOperacion.get(operacion);
+        return enCurso != null ? enCurso : 0;
+    }
+
+    private int concurrenciaOperacion(final int operacion) {
+        final Integer limite = concurrenciaOperacion.get(operacion);
+        return limite != null ? limite : hilos;
+    }
+
+    /**
+     * Deja de aceptar simulaciones y espera a que terminen las que están en curso y en cola; pasado
+     * el tiempo de espera descarta la cola e interrumpe las que siguen en curso.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        bloqueo.lock();
+        try {
+            apagado = true;
+            hayTrabajo.signalAll();
+        } finally {
+            bloqueo.unlock();
+        }
+        final long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(ESPERA_APAGADO_SEGUNDOS);
+        for (final Thread hilo : trabajadores) {
+            hilo.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime())));
+        }
+        bloqueo.lock();
+        try {
+            for (final ArrayDeque<Tarea> cola : colas) {
+                cola.clear();
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+        for (final Thread hilo : trabajadores) {
+            if (hilo.isAlive()) {
+                LOG.warn("El planificador de simulaciones no ha terminado a tiempo, se interrumpe " + hilo.getName());
+                hilo.interrupt();
+            }
+        }
+    }
+
+    /**
+     * @param concurrencia hilos que puede ocupar cada prioridad; las que no aparecen mantienen su
+     *                     límite: todo el pool para {@link Prioridad#INTERACTIVA}, la mitad para
+     *                     {@link Prioridad#MEDIADOR} y un cuarto para {@link Prioridad#LOTE}
+     */
+    public void setConcurrenciaPorPrioridad(final Map<Prioridad, Integer> concurrencia) {
+        final int[] nuevos = concurrenciaPrioridad.clone();
+        for (final Map.Entry<Prioridad, Integer> limite : concurrencia.entrySet()) {
+            nuevos[limite.getKey().ordinal()] = limite.getValue();
+        }
+        concurrenciaPrioridad = nuevos;
+        despertar();
+    }
+
+    /**
+     * @param capacidad simulaciones que pueden esperar en la cola de cada prioridad; por defecto
+     *                  {@value #CAPACIDAD_COLA}
+     */
+    public void setColaPorPrioridad(final Map<Prioridad, Integer> capacidad) {
+        final int[] nuevos = capacidadColaPrioridad.clone();
+        for (final Map.Entry<Prioridad, Integer> limite : capacidad.entrySet()) {
+            nuevos[limite.getKey().ordinal()] = limite.getValue();
+        }
+        capacidadColaPrioridad = nuevos;
+    }
+
+    /**
+     * @param concurrencia hilos que puede ocupar cada operación de {@link StaticVarsContratacion};
+     *                     las que no aparecen mantienen su límite: la mitad del pool para
+     *                     {@code INCLUSION_BENEFICIARIO} y todo el pool para el resto
+     */
+    public void setConcurrenciaPorOperacion(final Map<Integer, Integer> concurrencia) {
+        final Map<Integer, Integer> nuevos = new HashMap<>(concurrenciaOperacion);
+        nuevos.putAll(concurrencia);
+        concurrenciaOperacion = Collections.unmodifiableMap(nuevos);
+        despertar();
+    }
+
+    private void despertar() {
+        bloqueo.lock();
+        try {
+            hayTrabajo.signalAll();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @param prioridad prioridad de las simulaciones
+     * @return simulaciones de la prioridad ejecutándose en este momento
+     */
+    public int getEnCurso(final Prioridad prioridad) {
+        bloqueo.lock();
+        try {
+            return enCursoPrioridad[prioridad.ordinal()];
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @param prioridad prioridad de las simulaciones
+     * @return simulaciones de la prioridad esperando en cola
+     */
+    public int getEnCola(final Prioridad prioridad) {
+        bloqueo.lock();
+        try {
+            return colas.get(prioridad.ordinal()).size();
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * @param prioridad prioridad de las simulaciones
+     * @return simulaciones de la prioridad rechazadas desde el arranque
+     */
+    public long getRechazadas(final Prioridad prioridad) {
+        return rechazadas[prioridad.ordinal()].get();
+    }
+
+    private static final class Tarea {
+        private final Runnable tarea;
+        private final int operacion;
+        private final Prioridad prioridad;
+
+        private Tarea(final Runnable tarea, final int operacion, final Prioridad prioridad) {
+            this.tarea = tarea;
+            this.operacion = operacion;
+            this.prioridad = prioridad;
+        }
+    }
+}
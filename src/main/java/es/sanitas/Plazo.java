@@ -0,0 +1,106 @@
+package es.sanitas;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Instante límite de una simulación completa, compartido por todas sus frecuencias.
+ * <p>
+ * Mientras se llama al servicio de simulación el plazo queda asociado al hilo
+ * ({@link #actual()}), de modo que las implementaciones y decoradores de
+ * {@link es.sanitas.soporte.SimulacionWS} pueden limitar sus esperas al tiempo restante.
+ */
+public final class Plazo {
+
+    private static final ThreadLocal<Plazo> ACTUAL = new ThreadLocal<>();
+
+    /** Avisa de los futuros que no terminan dentro de su plazo; no ejecuta sus etapas posteriores. */
+    private static final ScheduledThreadPoolExecutor VIGILANTE = crearVigilante();
+
+    private final long limiteNanos;
+
+    private Plazo(final long limiteNanos) {
+        this.limiteNanos = limiteNanos;
+    }
+
+    /**
+     * @param duracion tiempo disponible desde ahora
+     * @param unidad   unidad de la duración
+     * @return plazo que expira pasada la duración indicada
+     */
+    public static Plazo dentroDe(final long duracion, final TimeUnit unidad) {
+        return new Plazo(System.nanoTime() + unidad.toNanos(duracion));
+    }
+
+    /**
+     * @param unidad unidad en la que se quiere el tiempo restante
+     * @return tiempo restante hasta el límite, nunca negativo
+     */
+    public long getRestante(final TimeUnit unidad) {
+        return unidad.convert(Math.max(0L, limiteNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return true si se ha alcanzado el límite
+     */
+    public boolean haExpirado() {
+        return limiteNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Completa el futuro con TimeoutException si no ha terminado al alcanzarse el límite.
+     * <p>
+     * El hilo vigilante sólo detecta el vencimiento: el futuro se completa en el ejecutor indicado,
+     * de modo que las etapas encadenadas al futuro no ocupan el único hilo que vigila los plazos.
+     *
+     * @param futuro   futuro a limitar
+     * @param ejecutor ejecutor en el que se completa el futuro al vencer el plazo
+     * @return el mismo futuro
+     */
+    public <T> CompletableFuture<T> limitar(final CompletableFuture<T> futuro, final Executor ejecutor) {
+        if (!futuro.isDone()) {
+            final Runnable vencer = () -> futuro.completeExceptionally(
+                    new TimeoutException("Se ha agotado el plazo de la simulacion"));
+            final ScheduledFuture<?> aviso = VIGILANTE.schedule(() -> {
+                try {
+                    ejecutor.execute(vencer);
+                } catch (final RejectedExecutionException e) {
+                    // Sin hueco en el ejecutor el plazo se cumple igualmente, aunque sea en este hilo
+                    vencer.run();
+                }
+            }, getRestante(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            futuro.whenComplete((valor, error) -> aviso.cancel(false));
+        }
+        return futuro;
+    }
+
+    /**
+     * @return plazo de la simulación que está ejecutando el hilo actual, o null si no hay ninguno
+     */
+    public static Plazo actual() {
+        return ACTUAL.get();
+    }
+
+    static void establecer(final Plazo plazo) {
+        ACTUAL.set(plazo);
+    }
+
+    static void limpiar() {
+        ACTUAL.remove();
+    }
+
+    private static ScheduledThreadPoolExecutor crearVigilante() {
+        final ScheduledThreadPoolExecutor vigilante = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread hilo = new Thread(r, "simulacion-plazos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        vigilante.setRemoveOnCancelPolicy(true);
+        return vigilante;
+    }
+}
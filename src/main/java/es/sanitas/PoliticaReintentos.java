@@ -0,0 +1,204 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decide si una simulación que el servicio ha devuelto con error se repite y cuánto se espera antes.
+ * <p>
+ * Los códigos de error se clasifican en: código promocional no válido (se repite sin el código),
+ * errores transitorios configurados (se repite la misma petición tras una espera exponencial con
+ * jitter) y el resto, que no se repiten. Además del máximo de intentos por simulación, los
+ * reintentos de errores transitorios consumen un presupuesto compartido: cada simulación aporta una
+ * fracción de reintento y cada reintento gasta uno entero, de modo que con el servicio degradado no
+ * se multiplica la carga. La repetición sin código promocional no es un reintento del mismo fallo
+ * sino una petición distinta que se hace una sola vez, así que no cuenta para ninguno de los dos
+ * límites.
+ * Pensada para declararse como bean de Spring e inyectarse en los {@link RealizarSimulacion}.
+ */
+public class PoliticaReintentos {
+
+    private static final int INTENTOS_POR_DEFECTO = 2;
+    private static final long ESPERA_BASE_POR_DEFECTO = 100;
+    private static final long ESPERA_MAXIMA_POR_DEFECTO = TimeUnit.SECONDS.toMillis(2);
+    private static final double PROPORCION_POR_DEFECTO = 0.1;
+    private static final int PRESUPUESTO_MAXIMO_POR_DEFECTO = 50;
+
+    private static final PoliticaReintentos POR_DEFECTO = new PoliticaReintentos();
+
+    /**
+     * Tratamiento de un código de error del servicio.
+     */
+    public enum TipoReintento {
+        /** No se repite la simulación. */
+        NINGUNO,
+        /** Se repite sin el código promocional. */
+        SIN_PROMOCION,
+        /** Se repite la misma petición tras una espera. */
+        TRANSITORIO
+    }
+
+    private volatile int maxIntentos = INTENTOS_POR_DEFECTO;
+    private volatile long esperaBaseMillis = ESPERA_BASE_POR_DEFECTO;
+    private volatile long esperaMaximaMillis = ESPERA_MAXIMA_POR_DEFECTO;
+    private volatile Set<String> codigosTransitorios = Collections.emptySet();
+
+    private final Object bloqueo = new Object();
+    private double proporcionPresupuesto = PROPORCION_POR_DEFECTO;
+    private double presupuestoMaximo = PRESUPUESTO_MAXIMO_POR_DEFECTO;
+    private double presupuesto = PRESUPUESTO_MAXIMO_POR_DEFECTO;
+
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong denegados = new AtomicLong();
+
+    /**
+     * @return política compartida por las simulaciones que no tienen una configurada
+     */
+    public static PoliticaReintentos porDefecto() {
+        return POR_DEFECTO;
+    }
+
+    /**
+     * @param codigoError código de error devuelto por el servicio, puede ser null
+     * @return cómo tratar el error
+     */
+    public TipoReintento clasificar(final String codigoError) {
+        if (codigoError == null) {
+            return TipoReintento.NINGUNO;
+        }
+        if (StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL.equalsIgnoreCase(codigoError)) {
+            return TipoReintento.SIN_PROMOCION;
+        }
+        return codigosTransitorios.contains(codigoError) ? TipoReintento.TRANSITORIO : TipoReintento.NINGUNO;
+    }
+
+    /**
+     * Anota una nueva simulación, que aporta su parte al presupuesto de reintentos.
+     */
+    public void registrarSimulacion() {
+        synchronized (bloqueo) {
+            presupuesto = Math.min(presupuestoMaximo, presupuesto + proporcionPresupuesto);
+        }
+    }
+
+    /**
+     * Decide si se reintenta y, si es un error transitorio, gasta un reintento del presupuesto.
+     *
+     * @param tipo      clasificación del error
+     * @param intentos  intentos ya realizados de la simulación, sin contar la repetición sin código
+     *                  promocional; no se tiene en cuenta para {@link TipoReintento#SIN_PROMOCION}
+     * @param plazo     plazo de la simulación, puede ser null
+     * @return milisegundos a esperar antes de reintentar, o -1 si no se debe reintentar
+     */
+    public long reintentar(final TipoReintento tipo, final int intentos, final Plazo plazo) {
+        if (tipo == TipoReintento.NINGUNO) {
+            return -1;
+        }
+        if (tipo == TipoReintento.SIN_PROMOCION) {
+            if (plazo != null && plazo.haExpirado()) {
+                return -1;
+            }
+            reintentos.incrementAndGet();
+            return 0;
+        }
+        if (intentos >= maxIntentos) {
+            return -1;
+        }
+        final long espera = espera(intentos);
+        if (plazo != null && plazo.getRestante(TimeUnit.MILLISECONDS) <= espera) {
+            return -1;
+        }
+        synchronized (bloqueo) {
+            if (presupuesto < 1) {
+                denegados.incrementAndGet();
+                return -1;
+            }
+            presupuesto -= 1;
+        }
+        reintentos.incrementAndGet();
+        return espera;
+    }
+
+    /**
+     * Espera exponencial con jitter completo: aleatoria entre 0 y base * 2^(intentos - 1), acotada.
+     */
+    private long espera(final int intentos) {
+        final long tope = Math.min(esperaMaximaMillis, esperaBaseMillis << Math.min(intentos - 1, 20));
+        return ThreadLocalRandom.current().nextLong(tope + 1);
+    }
+
+    /**
+     * @param maxIntentos intentos máximos de cada simulación por errores transitorios, incluido el
+     *                    primero
+     */
+    public void setMaxIntentos(final int maxIntentos) {
+        if (maxIntentos < 1) {
+            throw new IllegalArgumentException("Debe permitirse al menos un intento");
+        }
+        this.maxIntentos = maxIntentos;
+    }
+
+    /**
+     * @return the maxIntentos
+     */
+    public int getMaxIntentos() {
+        return maxIntentos;
+    }
+
+    /**
+     * @param esperaBaseMillis   espera máxima antes del primer reintento de un error transitorio
+     * @param esperaMaximaMillis espera máxima antes de cualquier reintento
+     */
+    public void setEsperas(final long esperaBaseMillis, final long esperaMaximaMillis) {
+        this.esperaBaseMillis = esperaBaseMillis;
+        this.esperaMaximaMillis = esperaMaximaMillis;
+    }
+
+    /**
+     * @param codigosTransitorios códigos de error del servicio que se reintentan con la misma petición
+     */
+    public void setCodigosTransitorios(final Set<String> codigosTransitorios) {
+        this.codigosTransitorios = Collections.unmodifiableSet(new HashSet<>(codigosTransitorios));
+    }
+
+    /**
+     * @param proporcion reintentos que aporta cada simulación al presupuesto (p.e. 0.1 = uno de cada diez)
+     * @param maximo     reintentos que se pueden acumular
+     */
+    public void setPresupuesto(final double proporcion, final int maximo) {
+        synchronized (bloqueo) {
+            this.proporcionPresupuesto = proporcion;
+            this.presupuestoMaximo = maximo;
+            this.presupuesto = Math.min(presupuesto, maximo);
+        }
+    }
+
+    /**
+     * @return reintentos disponibles en el presupuesto
+     */
+    public double getPresupuestoDisponible() {
+        synchronized (bloqueo) {
+            return presupuesto;
+        }
+    }
+
+    /**
+     * @return reintentos realizados desde el arranque
+     */
+    public long getReintentos() {
+        return reintentos.get();
+    }
+
+    /**
+     * @return reintentos denegados por falta de presupuesto
+     */
+    public long getDenegados() {
+        return denegados.get();
+    }
+}
@@ -2,35 +2,55 @@ package es.sanitas;
 
 import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
 import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosPlanProducto;
-import es.sanitas.bravo.ws.stubs.contratacionws.documentacion.Primas;
 import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.*;
 import es.sanitas.soporte.*;
 import es.sanitas.soporte.Recibo;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import wscontratacion.contratacion.fuentes.parametros.DatosAlta;
 import wscontratacion.contratacion.fuentes.parametros.DatosAsegurado;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.*;
 
 
-public class RealizarSimulacion implements IRealizarSimulacion {
+public class RealizarSimulacion implements IRealizarSimulacion, DisposableBean {
 
 
-    private static final int NUMERO_HILOS = 4;
-    private static final int TIMEOUT = 30;
-    private final ExecutorService pool = Executors.newFixedThreadPool(NUMERO_HILOS);
+    private static final long TIMEOUT_POR_DEFECTO = TimeUnit.SECONDS.toMillis(30);
 
-    private final SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy");
+    /** Fecha de emisión de los recibos simulados, en milisegundos; se calcula una sola vez. */
+    private static final long FECHA_EMISION_RECIBOS = LocalDate.parse("25/12/2016", DateTimeFormatter.ofPattern("dd/MM/yyyy"))
+            .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
 
     private static final Logger LOG = LoggerFactory.getLogger(RealizarSimulacion.class);
 
     private SimulacionWS servicioSimulacion;
 
+    private EjecutorSimulaciones ejecutor;
+    private boolean ejecutorPropio;
+
+    private PlanificadorSimulaciones planificador;
+    private PlanificadorSimulaciones.Prioridad prioridad = PlanificadorSimulaciones.Prioridad.INTERACTIVA;
+
+    private long timeoutMillis = TIMEOUT_POR_DEFECTO;
+
+    private boolean cancelacionTemprana;
+
+    private DerivacionFrecuencias derivacionFrecuencias;
+
+    private CacheCatalogosPlan cacheCatalogos;
+
+    private CachePromocionesRechazadas promocionesRechazadas;
+
+    private PoliticaReintentos politicaReintentos;
+
+    private LimitadorSimulaciones limitador;
+
 
     /**
      * Método que realiza las llamadas a las diferentes clases de simulación, para tarificar
@@ -47,230 +67,455 @@ public class RealizarSimulacion implements IRealizarSimulacion {
                                                   final List<BeneficiarioPolizas> lBeneficiarios,
                                                   final boolean desglosar, final Map<String, Object> hmValores)
             throws Exception {
+        return realizarSimulacion(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, null);
+    }
 
-        final Map<String, Object> hmSimulacion = new HashMap<>();
-        @SuppressWarnings("unchecked") final List<String> lExcepciones = (List<String>) hmValores.get("EXCEPCIONES");
-        final DatosContratacionPlan oDatosPlan = (DatosContratacionPlan) hmValores.get(StaticVarsContratacion.DATOS_PLAN);
+    /**
+     * Igual que {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map)}, pero entregando al
+     * receptor el resultado de cada frecuencia en cuanto termina su simulación.
+     *
+     * @param receptor receptor de los resultados parciales, puede ser null
+     */
+    @Override
+    public Map<String, Object> realizarSimulacion(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                  final List<BeneficiarioPolizas> lBeneficiarios,
+                                                  final boolean desglosar, final Map<String, Object> hmValores,
+                                                  final ReceptorSimulacion receptor)
+            throws Exception {
+        return calcularSimulacion(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, receptor).asLegacyMap();
+    }
 
+    /**
+     * Igual que {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map, ReceptorSimulacion)},
+     * pero devolviendo el resultado tipado.
+     *
+     * @param receptor receptor de los resultados parciales, puede ser null
+     */
+    public ResultadoSimulacion calcularSimulacion(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                  final List<BeneficiarioPolizas> lBeneficiarios,
+                                                  final boolean desglosar, final Map<String, Object> hmValores,
+                                                  final ReceptorSimulacion receptor)
+            throws ExcepcionContratacion {
 
-        final List<Primas> primas = new ArrayList<>();
-        final Double descuentosTotales[] = {0.0, 0.0, 0.0, 0.0};
-        final Double pagoTotal[] = {0.0, 0.0, 0.0, 0.0};
-        final Double precioConPromocion[] = {0.0, 0.0, 0.0, 0.0};
-        final List<List<PrimasPorProducto>> primasDesglosadas = new ArrayList<>();
-        final List<List<PromocionAplicada>> promociones = new ArrayList<>();
-        final List<List<es.sanitas.soporte.Recibo>> recibos = new ArrayList<>();
-        final List<String> errores = new ArrayList<>();
+        final ContextoTarificacion contexto = new ContextoTarificacion(oDatosAlta, lBeneficiarios, hmValores, receptor);
+        final CatalogoPlan catalogo = contexto.catalogo;
 
-        Set<FrecuenciaEnum> frecuenciasTarificar = EnumSet.noneOf(FrecuenciaEnum.class);
-        if (hmValores.containsKey(StaticVarsContratacion.FREC_MENSUAL)) {
-            frecuenciasTarificar.add(FrecuenciaEnum.MENSUAL);
-        }
-        if (lBeneficiarios != null) {
-            frecuenciasTarificar.clear();
-            frecuenciasTarificar.add(FrecuenciaEnum.obtenerFrecuencia(oDatosAlta.getGenFrecuenciaPago()));
-        }
-        if (frecuenciasTarificar.isEmpty()) {
-            frecuenciasTarificar = EnumSet.allOf(FrecuenciaEnum.class);
-        }
+        // Un único plazo para toda la simulación, compartido por todas las frecuencias
+        final Plazo plazo = Plazo.dentroDe(timeoutMillis, TimeUnit.MILLISECONDS);
 
-        final Collection<Callable<TarificacionPoliza>> solvers = new ArrayList<>(0);
-        for (final FrecuenciaEnum frecuencia : frecuenciasTarificar) {
-            solvers.add(simularPolizaFrecuencia(oDatosPlan, oDatosAlta, lProductos, lBeneficiarios, frecuencia));
-        }
-        final CompletionService<TarificacionPoliza> ecs = new ExecutorCompletionService<>(pool);
-        int n = 0;
-        for (final Callable<TarificacionPoliza> s : solvers) {
+        final CompletionService<TarificacionPoliza> ecs = new ExecutorCompletionService<>(obtenerEjecutor(lBeneficiarios));
+        final List<Future<TarificacionPoliza>> pendientes = new ArrayList<>();
+        for (final FrecuenciaEnum frecuencia : contexto.frecuenciasRemotas) {
+            final Callable<TarificacionPoliza> s = simularPolizaFrecuencia(catalogo, oDatosAlta, lProductos, lBeneficiarios, frecuencia, plazo);
             try {
-                ecs.submit(s);
-                n++;
+                pendientes.add(ecs.submit(s));
             } catch (final RuntimeException ree) {
                 LOG.error("RejectedExecutionException con el metodo " + s.toString(), ree);
             }
         }
-        final List<TarificacionPoliza> resultadoSimulaciones = new ArrayList<>();
-        final List<ExecutionException> resultadoExcepciones = new ArrayList<>();
-        for (int i = 0; i < n; ++i) {
-            try {
-                final Future<TarificacionPoliza> future = ecs.poll(TIMEOUT, TimeUnit.SECONDS);
-                if (future != null && future.get() != null && future.get().getTarificacion() != null) {
-                    resultadoSimulaciones.add(future.get());
-                } else {
+        final int n = pendientes.size();
+        // Cada frecuencia se agrega en cuanto llega, sin esperar al resto
+        final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados = new EnumMap<>(FrecuenciaEnum.class);
+        final List<Throwable> resultadoExcepciones = new ArrayList<>();
+        try {
+            for (int i = 0; i < n; ++i) {
+                final Future<TarificacionPoliza> future = ecs.poll(plazo.getRestante(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+                if (future == null) {
                     LOG.error("La llamada asincrona al servicio de simulacion ha fallado por timeout");
+                    break;
+                }
+                pendientes.remove(future);
+                try {
+                    final TarificacionPoliza resultado = future.get();
+                    if (resultado != null && resultado.getTarificacion() != null) {
+                        for (final ResultadoFrecuencia resultadoFrecuencia : agregarFrecuencia(resultado, contexto)) {
+                            resultados.put(resultadoFrecuencia.getFrecuencia(), resultadoFrecuencia);
+                        }
+                    }
+                } catch (final ExecutionException e) {
+                    LOG.error("ExecutionException", e);
+                    resultadoExcepciones.add(e.getCause());
+                    if (cancelacionTemprana && esErrorDefinitivo(e.getCause())) {
+                        LOG.info("Se cancelan " + pendientes.size() + " simulaciones por error definitivo");
+                        break;
+                    }
                 }
-            } catch (final InterruptedException e) {
-                LOG.error("InterruptedException", e);
-            } catch (final ExecutionException e) {
-                LOG.error("ExecutionException", e);
-                resultadoExcepciones.add(e);
             }
+        } catch (final InterruptedException e) {
+            LOG.error("InterruptedException", e);
+            Thread.currentThread().interrupt();
+        } finally {
+            // Las simulaciones que no han terminado dentro del plazo ya no se van a leer
+            cancelar(pendientes);
         }
 
-        if (!resultadoExcepciones.isEmpty()) {
-            throw new ExcepcionContratacion(resultadoExcepciones.get(0).getCause().getMessage());
-        }
-
-        for (final FrecuenciaEnum frecuencia : frecuenciasTarificar) {
-            if (resultadoSimulaciones.isEmpty()) {
-                throw new ExcepcionContratacion("No se ha podido obtener un precio para el presupuesto. Por favor, inténtelo de nuevo más tarde.");
-            }
-
-            final TarificacionPoliza retornoPoliza = resultadoSimulaciones.get(0);
+        return agregarResultados(resultados, resultadoExcepciones, desglosar);
+    }
 
+    /**
+     * Versión asíncrona de {@link #realizarSimulacion(DatosAlta, List, List, boolean, Map)}: no
+     * bloquea el hilo que la invoca. Las simulaciones de cada frecuencia se lanzan en el ejecutor y
+     * el resultado se compone cuando terminan todas o se agota el plazo.
+     *
+     * @return futuro con el mismo Map que devuelve la versión síncrona; si la simulación falla se
+     * completa con la ExcepcionContratacion correspondiente
+     */
+    @Override
+    public CompletableFuture<Map<String, Object>> realizarSimulacionAsync(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                                         final List<BeneficiarioPolizas> lBeneficiarios,
+                                                                         final boolean desglosar, final Map<String, Object> hmValores) {
+        return realizarSimulacionAsync(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, null);
+    }
 
-            final Tarificacion retorno = retornoPoliza.getTarificacion();
-            final String codigoError = retornoPoliza.getCodigoError();
-            if (codigoError != null && !StringUtils.isEmpty(codigoError)) {
-                errores.add(codigoError);
-            }
+    /**
+     * Igual que {@link #realizarSimulacionAsync(DatosAlta, List, List, boolean, Map)}, pero entregando
+     * al receptor el resultado de cada frecuencia, desde el hilo que la ha simulado, en cuanto termina.
+     *
+     * @param receptor receptor de los resultados parciales, puede ser null
+     */
+    @Override
+    public CompletableFuture<Map<String, Object>> realizarSimulacionAsync(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                                         final List<BeneficiarioPolizas> lBeneficiarios,
+                                                                         final boolean desglosar, final Map<String, Object> hmValores,
+                                                                         final ReceptorSimulacion receptor) {
+        final CompletableFuture<ResultadoSimulacion> simulacion =
+                calcularSimulacionAsync(oDatosAlta, lProductos, lBeneficiarios, desglosar, hmValores, receptor);
+        final CompletableFuture<Map<String, Object>> resultado = simulacion.thenApply(ResultadoSimulacion::asLegacyMap);
+        // Si el llamante cancela el Map se cancela también la simulación
+        resultado.whenComplete((mapa, error) -> simulacion.cancel(true));
+        return resultado;
+    }
 
-            int contadorBeneficiario = 0;
-            double css = 0;
-            for (final TarifaBeneficiario tarifaBeneficiario : retorno.getTarifas().getTarifaBeneficiarios()) {
-                List<PrimasPorProducto> listaProductoPorAseg = new ArrayList<>();
-                if (primasDesglosadas.size() > contadorBeneficiario) {
-                    listaProductoPorAseg = primasDesglosadas.get(contadorBeneficiario);
-                } else {
-                    primasDesglosadas.add(listaProductoPorAseg);
+    /**
+     * Versión asíncrona de {@link #calcularSimulacion}.
+     *
+     * @param receptor receptor de los resultados parciales, puede ser null
+     */
+    public CompletableFuture<ResultadoSimulacion> calcularSimulacionAsync(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+                                                                          final List<BeneficiarioPolizas> lBeneficiarios,
+                                                                          final boolean desglosar, final Map<String, Object> hmValores,
+                                                                          final ReceptorSimulacion receptor) {
+
+        final ContextoTarificacion contexto = new ContextoTarificacion(oDatosAlta, lBeneficiarios, hmValores, receptor);
+        final CatalogoPlan catalogo = contexto.catalogo;
+        final Plazo plazo = Plazo.dentroDe(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        final List<CompletableFuture<TarificacionPoliza>> simulaciones = new ArrayList<>();
+        final List<CompletableFuture<List<ResultadoFrecuencia>>> agregaciones = new ArrayList<>();
+        final Executor destino = obtenerEjecutor(lBeneficiarios);
+        for (final FrecuenciaEnum frecuencia : contexto.frecuenciasRemotas) {
+            // Al vencer el plazo la frecuencia se completa en el mismo ejecutor en que se simula
+            final CompletableFuture<TarificacionPoliza> simulacion = plazo.limitar(enviar(
+                    simularPolizaFrecuencia(catalogo, oDatosAlta, lProductos, lBeneficiarios, frecuencia, plazo),
+                    destino), destino);
+            simulaciones.add(simulacion);
+            // Cada frecuencia se agrega en el hilo que la ha simulado, en cuanto termina
+            agregaciones.add(simulacion.thenApply(resultado -> {
+                if (resultado == null || resultado.getTarificacion() == null) {
+                    return Collections.<ResultadoFrecuencia>emptyList();
                 }
+                return agregarFrecuencia(resultado, contexto);
+            }));
+        }
 
-                Primas primaAsegurado = new Primas();
-                if (primas.size() <= contadorBeneficiario) {
-                    primas.add(primaAsegurado);
-                }
+        final CompletableFuture<ResultadoSimulacion> resultado = CompletableFuture
+                .allOf(agregaciones.toArray(new CompletableFuture<?>[0]))
+                .handle((ignorado, error) -> {
+                    final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados = new EnumMap<>(FrecuenciaEnum.class);
+                    final List<Throwable> resultadoExcepciones = new ArrayList<>();
+                    recoger(agregaciones, resultados, resultadoExcepciones);
+                    try {
+                        return agregarResultados(resultados, resultadoExcepciones, desglosar);
+                    } catch (final ExcepcionContratacion e) {
+                        throw new CompletionException(e);
+                    }
+                });
+
+        if (cancelacionTemprana) {
+            for (final CompletableFuture<TarificacionPoliza> simulacion : simulaciones) {
+                simulacion.whenComplete((tarificacion, error) -> {
+                    // Se propaga la propia excepción para no perder su subtipo
+                    if (error != null && esErrorDefinitivo(causa(error))) {
+                        resultado.completeExceptionally(causa(error));
+                    }
+                });
+            }
+        }
+        // Si el resultado se completa antes de tiempo (error definitivo o cancelación del llamante)
+        // no se espera al resto de frecuencias
+        resultado.whenComplete((simulacion, error) -> cancelar(simulaciones));
+        return resultado;
+    }
 
-                int contadorProducto = 0;
-                for (final TarifaProducto tarifaProducto : tarifaBeneficiario.getTarifasProductos()) {
-
-                    if ((tarifaProducto.getIdProducto() != 389
-                            || !comprobarExcepcion(lExcepciones, StaticVarsContratacion.PROMO_ECI_COLECTIVOS)
-                            || hayTarjetas(oDatosAlta)) && tarifaProducto.getIdProducto() != 670
-                            || !comprobarExcepcion(lExcepciones, StaticVarsContratacion.PROMO_FARMACIA)
-                            || hayTarjetas(oDatosAlta)) {
-
-                        PrimasPorProducto oPrimasProducto = new PrimasPorProducto();
-                        if (listaProductoPorAseg.size() > contadorProducto) {
-                            oPrimasProducto = listaProductoPorAseg.get(contadorProducto);
-                        } else {
-                            oPrimasProducto.setCodigoProducto(tarifaProducto.getIdProducto().intValue());
-                            oPrimasProducto.setNombreProducto(tarifaProducto.getDescripcion());
-                            final DatosPlanProducto producto = getDatosProducto(oDatosPlan, tarifaProducto.getIdProducto());
-                            if (producto != null) {
-                                oPrimasProducto.setObligatorio(producto.isSwObligatorio() ? "S" : "N");
-                                oPrimasProducto.setNombreProducto(producto.getDescComercial());
-                            }
-                            listaProductoPorAseg.add(oPrimasProducto);
-                        }
+    /**
+     * Obtiene las frecuencias de pago que hay que tarificar.
+     *
+     * @return MENSUAL si se ha pedido explícitamente, la frecuencia de la póliza en inclusiones de
+     * beneficiarios y todas las frecuencias en el resto de casos
+     */
+    private static Set<FrecuenciaEnum> obtenerFrecuenciasTarificar(final DatosAlta oDatosAlta,
+                                                           final List<BeneficiarioPolizas> lBeneficiarios,
+                                                           final Map<String, Object> hmValores) {
+        Set<FrecuenciaEnum> frecuenciasTarificar = EnumSet.noneOf(FrecuenciaEnum.class);
+        if (hmValores.containsKey(StaticVarsContratacion.FREC_MENSUAL)) {
+            frecuenciasTarificar.add(FrecuenciaEnum.MENSUAL);
+        }
+        if (lBeneficiarios != null) {
+            frecuenciasTarificar.clear();
+            frecuenciasTarificar.add(FrecuenciaEnum.obtenerFrecuencia(oDatosAlta.getGenFrecuenciaPago()));
+        }
+        if (frecuenciasTarificar.isEmpty()) {
+            frecuenciasTarificar = EnumSet.allOf(FrecuenciaEnum.class);
+        }
+        return frecuenciasTarificar;
+    }
 
-                        final TarifaDesglosada tarifaDesglosada = tarifaProducto.getTarifaDesglosada();
-                        final Primas primaProducto = oPrimasProducto.getPrimaProducto();
-
-                        // Se calcula el CSS total para poder calcular el precio con promoción
-                        css += tarifaDesglosada.getCss();
-
-                        /*
-                         * No sumamos tarifaDesglosada.getCss() + tarifaDesglosada.getCssre() porque
-                         * la Compensación del Consorcio de Seguros sólo se aplica en la primera
-                         * mensualidad. Y queremos mostrar al usuario el precio de todos los meses.
-                         */
-                        final double pago = tarifaDesglosada.getPrima() + tarifaDesglosada.getISPrima();
-                        final double descuento = tarifaDesglosada.getDescuento();
-                        switch (frecuencia) {
-                            case MENSUAL:
-                                // Mensual
-                                primaProducto.setPrima(Double.toString(descuento));
-                                break;
-                            case TRIMESTRAL:
-                                // Trimestral
-                                primaProducto.setPrima(Double.toString(descuento));
-                                break;
-                            case SEMESTRAL:
-                                // Semestral
-                                primaProducto.setPrima(Double.toString(descuento * 2));
-                                break;
-                            case ANUAL:
-                                // Anual
-                                primaProducto.setPrima(Double.toString(descuento * 2));
-                                break;
-                        }
-                        descuentosTotales[frecuencia.getValor() - 1] += tarifaDesglosada.getDescuento();
-                        pagoTotal[frecuencia.getValor() - 1] += pago + tarifaDesglosada.getDescuento();
+    /**
+     * Compone el resultado de la simulación a partir de los resultados ya agregados de cada
+     * frecuencia.
+     *
+     * @param resultados           resultado de cada frecuencia obtenida dentro del plazo
+     * @param resultadoExcepciones causas de las frecuencias que han fallado
+     * @return resultado de la simulación
+     * @throws ExcepcionContratacion si alguna frecuencia ha fallado o no se ha obtenido ningún precio
+     */
+    private ResultadoSimulacion agregarResultados(final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados,
+                                                  final List<Throwable> resultadoExcepciones,
+                                                  final boolean desglosar) throws ExcepcionContratacion {
 
-                    }
-                    contadorProducto++;
-                }
-                contadorBeneficiario++;
+        if (!resultadoExcepciones.isEmpty()) {
+            final Throwable primera = resultadoExcepciones.get(0);
+            if (primera instanceof ExcepcionServicioNoDisponible) {
+                throw new ExcepcionServicioNoDisponible(primera.getMessage());
+            }
+            if (primera instanceof ExcepcionSimulacionRechazada) {
+                throw new ExcepcionSimulacionRechazada(primera.getMessage());
             }
+            throw new ExcepcionContratacion(primera.getMessage());
+        }
+        if (resultados.isEmpty()) {
+            throw new ExcepcionContratacion("No se ha podido obtener un precio para el presupuesto. Por favor, inténtelo de nuevo más tarde.");
+        }
+        return new ResultadoSimulacion(resultados, desglosar);
+    }
 
-            // Promociones aplicadas a la simulación
-            promociones.add(recuperarPromocionesAgrupadas(retorno.getPromociones().getListaPromocionesPoliza(), contadorBeneficiario));
+    /**
+     * Agrega la tarificación de una frecuencia y, si es la mensual de un plan derivable, calcula
+     * localmente el resto de frecuencias. Cada resultado se entrega al receptor según se obtiene.
+     *
+     * @param retornoPoliza tarificación devuelta por el servicio
+     * @param contexto      datos de la simulación
+     * @return resultado de la frecuencia simulada seguido de los de las frecuencias derivadas
+     */
+    private List<ResultadoFrecuencia> agregarFrecuencia(final TarificacionPoliza retornoPoliza,
+                                                        final ContextoTarificacion contexto) {
+        final ResultadoFrecuencia simulada = calcularResultadoFrecuencia(retornoPoliza, contexto);
+        notificar(contexto.receptor, simulada);
+        if (simulada.getFrecuencia() != FrecuenciaEnum.MENSUAL || contexto.frecuenciasDerivadas.isEmpty()) {
+            return Collections.singletonList(simulada);
+        }
+        final List<ResultadoFrecuencia> resultados = new ArrayList<>();
+        resultados.add(simulada);
+        for (final FrecuenciaEnum frecuencia : contexto.frecuenciasDerivadas) {
+            final ResultadoFrecuencia derivada = contexto.derivacion.derivar(simulada, frecuencia, contexto.idPlan);
+            notificar(contexto.receptor, derivada);
+            resultados.add(derivada);
+        }
+        return resultados;
+    }
 
-            // Lista de recibos del primer año
-            if (retorno.getRecibos() != null) {
-                recibos.add(toReciboList(retorno.getRecibos().getListaRecibosProductos()));
+    /**
+     * Entrega al receptor el resultado de una frecuencia. Un fallo del receptor no afecta a la
+     * simulación.
+     */
+    private void notificar(final ReceptorSimulacion receptor, final ResultadoFrecuencia resultado) {
+        if (receptor == null) {
+            return;
+        }
+        final FrecuenciaEnum frecuencia = resultado.getFrecuencia();
+        try {
+            receptor.frecuenciaSimulada(frecuencia, resultado);
+        } catch (final RuntimeException e) {
+            LOG.error("Error entregando el resultado de la frecuencia " + frecuencia, e);
+        }
+    }
 
-                // Se calcula el precio total con promoción
-                // Es el importe del primer recibo sin el impuesto del consorcio
-                precioConPromocion[frecuencia.getValor() - 1] = retorno.getRecibos().getReciboPoliza().getRecibos()[0].getImporte() - css;
+    /**
+     * Agrega la tarificación de una frecuencia: primas por asegurado y producto, totales,
+     * promociones y recibos.
+     *
+     * @param retornoPoliza tarificación devuelta para una frecuencia
+     * @return resultado de la frecuencia
+     */
+    private ResultadoFrecuencia calcularResultadoFrecuencia(final TarificacionPoliza retornoPoliza,
+                                                            final ContextoTarificacion contexto) {
+        final CatalogoPlan catalogo = contexto.catalogo;
+        final FiltroProductos filtro = contexto.filtro;
+        final FrecuenciaEnum frecuencia = retornoPoliza.getFrecuencia();
+        final Tarificacion retorno = retornoPoliza.getTarificacion();
+        final TarifaBeneficiario[] tarifasBeneficiarios = retorno.getTarifas().getTarifaBeneficiarios();
+        final List<List<PrimasPorProducto>> primasDesglosadas = new ArrayList<>(tarifasBeneficiarios.length);
+        final double[][] primas = new double[tarifasBeneficiarios.length][];
+        double descuentoTotal = 0;
+        double pagoTotal = 0;
+        double css = 0;
+        for (int i = 0; i < tarifasBeneficiarios.length; i++) {
+            final TarifaProducto[] tarifasProductos = tarifasBeneficiarios[i].getTarifasProductos();
+            final List<PrimasPorProducto> listaProductoPorAseg = new ArrayList<>(tarifasProductos.length);
+            final double[] primasAsegurado = new double[tarifasProductos.length];
+            for (final TarifaProducto tarifaProducto : tarifasProductos) {
+                if (filtro.esTarificable(tarifaProducto.getIdProducto())) {
+                    final PrimasPorProducto oPrimasProducto = new PrimasPorProducto();
+                    oPrimasProducto.setCodigoProducto(tarifaProducto.getIdProducto().intValue());
+                    oPrimasProducto.setNombreProducto(tarifaProducto.getDescripcion());
+                    final DatosPlanProducto producto = catalogo.getProducto(tarifaProducto.getIdProducto());
+                    if (producto != null) {
+                        oPrimasProducto.setObligatorio(producto.isSwObligatorio() ? "S" : "N");
+                        oPrimasProducto.setNombreProducto(producto.getDescComercial());
+                    }
+                    final TarifaDesglosada tarifaDesglosada = tarifaProducto.getTarifaDesglosada();
+                    final double descuento = tarifaDesglosada.getDescuento();
+                    final double prima = primaFrecuencia(frecuencia, descuento);
+                    oPrimasProducto.setPrima(prima);
+                    primasAsegurado[listaProductoPorAseg.size()] = prima;
+                    css += tarifaDesglosada.getCss();
+                    descuentoTotal += descuento;
+                    pagoTotal += tarifaDesglosada.getPrima() + tarifaDesglosada.getISPrima() + descuento;
+                    listaProductoPorAseg.add(oPrimasProducto);
+                }
             }
+            primasDesglosadas.add(listaProductoPorAseg);
+            primas[i] = Arrays.copyOf(primasAsegurado, listaProductoPorAseg.size());
         }
 
-        hmSimulacion.put(StaticVarsContratacion.PRIMAS_SIMULACION, primas);
-        hmSimulacion.put(StaticVarsContratacion.PRIMAS_SIMULACION_DESGLOSE, primasDesglosadas);
-        hmSimulacion.put(StaticVarsContratacion.SIMULACION_PROVINCIA, "Madrid");
-        hmSimulacion.put(StaticVarsContratacion.HAY_DESGLOSE, desglosar);
-        hmSimulacion.put(StaticVarsContratacion.DESCUENTOS_TOTALES, descuentosTotales);
-        hmSimulacion.put(StaticVarsContratacion.TOTAL_ASEGURADOS, primas);
-        hmSimulacion.put(StaticVarsContratacion.PROMOCIONES_SIMULACION, promociones);
-        hmSimulacion.put(StaticVarsContratacion.RECIBOS_SIMULACION, recibos);
-        hmSimulacion.put(StaticVarsContratacion.PAGO_TOTAL, pagoTotal);
-        hmSimulacion.put(StaticVarsContratacion.ERROR, errores);
+        final List<PromocionAplicada> promociones = recuperarPromocionesAgrupadas(
+                retorno.getPromociones().getListaPromocionesPoliza(), primasDesglosadas.size());
+        List<Recibo> recibos = null;
+        Double precioConPromocion = null;
+        if (retorno.getRecibos() != null) {
+            recibos = toReciboList(retorno.getRecibos().getListaRecibosProductos());
+            precioConPromocion = retorno.getRecibos().getReciboPoliza().getRecibos()[0].getImporte() - css;
+        }
+        return new ResultadoFrecuencia(frecuencia, primasDesglosadas, primas, promociones, recibos,
+                descuentoTotal, pagoTotal, precioConPromocion, retornoPoliza.getCodigoError());
+    }
 
-        // Si en la simulación hay apliacada alguna promoción
-        // de descuento sobre la prima
-        if (hayPromocionDescuento(promociones)) {
-            hmSimulacion.put(StaticVarsContratacion.PAGO_TOTAL, precioConPromocion);
+    /**
+     * Prima a mostrar de un producto en la frecuencia indicada.
+     *
+     * @param frecuencia frecuencia de pago
+     * @param descuento  descuento de la tarifa desglosada
+     * @return prima del producto
+     */
+    static double primaFrecuencia(final FrecuenciaEnum frecuencia, final double descuento) {
+        switch (frecuencia) {
+            case SEMESTRAL:
+            case ANUAL:
+                return descuento * 2;
+            case MENSUAL:
+            case TRIMESTRAL:
+            default:
+                return descuento;
         }
-        return hmSimulacion;
     }
 
     private Callable<TarificacionPoliza> simularPolizaFrecuencia(
-            final DatosContratacionPlan oDatosPlan, final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
-            final List<BeneficiarioPolizas> lBeneficiarios, final FrecuenciaEnum frecuencia) {
-        return new SimulacionCallable(oDatosPlan, oDatosAlta, lProductos, lBeneficiarios, frecuencia, servicioSimulacion);
+            final CatalogoPlan catalogo, final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
+            final List<BeneficiarioPolizas> lBeneficiarios, final FrecuenciaEnum frecuencia, final Plazo plazo) {
+        return new SimulacionCallable(catalogo, oDatosAlta, lProductos, lBeneficiarios, frecuencia, servicioSimulacion, plazo,
+                promocionesRechazadas, politicaReintentos, limitador);
     }
 
-    private DatosPlanProducto getDatosProducto(final DatosContratacionPlan oDatosPlan, final long idProducto) {
-        for (final DatosPlanProducto producto : oDatosPlan.getProductos()) {
-            if (producto.getIdProducto() == idProducto) {
-                return producto;
+    /**
+     * Envía la simulación de una frecuencia al ejecutor. Si el futuro devuelto se completa antes de
+     * que termine (plazo o cancelación), se interrumpe la llamada remota.
+     *
+     * @param simulacion simulación de una frecuencia
+     * @param destino    ejecutor en el que se simula
+     * @return futuro con la tarificación de la frecuencia
+     */
+    private CompletableFuture<TarificacionPoliza> enviar(final Callable<TarificacionPoliza> simulacion,
+                                                         final Executor destino) {
+        final CompletableFuture<TarificacionPoliza> resultado = new CompletableFuture<>();
+        final FutureTask<TarificacionPoliza> tarea = new FutureTask<TarificacionPoliza>(simulacion) {
+            @Override
+            protected void done() {
+                try {
+                    resultado.complete(get());
+                } catch (final ExecutionException e) {
+                    resultado.completeExceptionally(e.getCause());
+                } catch (final CancellationException | InterruptedException e) {
+                    resultado.completeExceptionally(e);
+                }
             }
+        };
+        resultado.whenComplete((tarificacion, error) -> tarea.cancel(true));
+        try {
+            destino.execute(tarea);
+        } catch (final RejectedExecutionException ree) {
+            LOG.error("RejectedExecutionException con el metodo " + simulacion.toString(), ree);
+            resultado.completeExceptionally(ree);
         }
-        return null;
+        return resultado;
     }
 
-
     /**
-     * Comprueba si alguna de las promociones aplicadas en la simulación es un descuento en la
-     * prima.
-     *
-     * @param promocionesAplicadas simulación múltiple realizada
-     */
-    private boolean hayPromocionDescuento(final List<List<PromocionAplicada>> promocionesAplicadas) {
-        boolean codigoAplicado = Boolean.FALSE;
-        if (promocionesAplicadas != null) {
-            for (final List<PromocionAplicada> promociones : promocionesAplicadas) {
-                for (final PromocionAplicada promocion : promociones) {
-                    if (promocion != null && TipoPromocionEnum.DESCUENTO_PORCENTAJE.equals(promocion.getTipoPromocion())) {
-                        codigoAplicado = Boolean.TRUE;
-                    }
+     * Separa los resultados obtenidos de los errores, con el mismo criterio que la versión
+     * síncrona: las frecuencias que no terminan dentro del plazo sólo se registran.
+     */
+    private void recoger(final List<CompletableFuture<List<ResultadoFrecuencia>>> agregaciones,
+                         final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados,
+                         final List<Throwable> resultadoExcepciones) {
+        for (final CompletableFuture<List<ResultadoFrecuencia>> agregacion : agregaciones) {
+            try {
+                for (final ResultadoFrecuencia resultado : agregacion.join()) {
+                    resultados.put(resultado.getFrecuencia(), resultado);
+                }
+            } catch (final CancellationException | CompletionException e) {
+                final Throwable causa = causa(e);
+                if (causa instanceof RejectedExecutionException) {
+                    // Ya registrada al enviarla; como en la versión síncrona no cuenta como error
+                    continue;
+                }
+                if (causa instanceof TimeoutException || causa instanceof CancellationException) {
+                    LOG.error("La llamada asincrona al servicio de simulacion ha fallado por timeout");
+                } else {
+                    LOG.error("ExecutionException", causa);
+                    resultadoExcepciones.add(causa);
                 }
             }
         }
-        return codigoAplicado;
     }
 
+    private static Throwable causa(final Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Un error es definitivo cuando el servicio de simulación ha rechazado la petición: repetirla,
+     * o esperar al resto de frecuencias, no cambia el resultado. Los plazos agotados, las
+     * interrupciones, el circuito abierto y los errores transitorios no lo son.
+     *
+     * @param causa causa del fallo de una frecuencia
+     * @return true si el error es definitivo
+     */
+    private boolean esErrorDefinitivo(final Throwable causa) {
+        return causa instanceof ExcepcionSimulacionRechazada;
+    }
 
+    /**
+     * Cancela las simulaciones pendientes, interrumpiendo la llamada remota si está en curso.
+     *
+     * @param pendientes simulaciones cuyo resultado ya no se va a esperar
+     */
+    private void cancelar(final Collection<? extends Future<?>> pendientes) {
+        for (final Future<?> pendiente : pendientes) {
+            pendiente.cancel(true);
+        }
+    }
 
     /**
      * @param oDatosAlta datos de alta
@@ -361,14 +606,14 @@ public class RealizarSimulacion implements IRealizarSimulacion {
      * @return lista de Recibo con la información de los recibos de la simulación.
      */
     private List<Recibo> toReciboList(final ReciboProducto[] recibos) {
-        final List<Recibo> recibosList = new LinkedList<>();
-
-        if (recibos != null) {
-            for (final ReciboProducto recibo : recibos) {
-                final Recibo reciboParam = toRecibo(recibo);
-                if (reciboParam != null) {
-                    recibosList.add(reciboParam);
-                }
+        if (recibos == null) {
+            return new ArrayList<>();
+        }
+        final List<Recibo> recibosList = new ArrayList<>(recibos.length);
+        for (final ReciboProducto recibo : recibos) {
+            final Recibo reciboParam = toRecibo(recibo);
+            if (reciboParam != null) {
+                recibosList.add(reciboParam);
             }
         }
         return recibosList;
@@ -384,12 +629,9 @@ public class RealizarSimulacion implements IRealizarSimulacion {
         Recibo reciboParam = null;
         if (recibo != null) {
             reciboParam = new Recibo();
+            // Recibo expone un Calendar mutable, así que cada recibo necesita el suyo
             final Calendar fechaEmision = Calendar.getInstance();
-            try {
-                fechaEmision.setTime(sdf.parse("25/12/2016"));
-            } catch (final ParseException e) {
-                LOG.error("Error parse date", e);
-            }
+            fechaEmision.setTimeInMillis(FECHA_EMISION_RECIBOS);
             reciboParam.setFechaEmision(fechaEmision);
             reciboParam.setImporte(recibo.getIdProducto() * 1000.);
         }
@@ -410,14 +652,207 @@ public class RealizarSimulacion implements IRealizarSimulacion {
         this.servicioSimulacion = servicioSimulacion;
     }
 
+    /**
+     * @return the timeoutMillis
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @param timeoutMillis tiempo máximo de una simulación completa, todas las frecuencias incluidas
+     */
+    public void setTimeoutMillis(final long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the cancelacionTemprana
+     */
+    public boolean isCancelacionTemprana() {
+        return cancelacionTemprana;
+    }
+
+    /**
+     * @param cancelacionTemprana si es true, el primer error definitivo de una frecuencia cancela
+     *                            las simulaciones del resto de frecuencias
+     */
+    public void setCancelacionTemprana(final boolean cancelacionTemprana) {
+        this.cancelacionTemprana = cancelacionTemprana;
+    }
+
+    /**
+     * @return the derivacionFrecuencias
+     */
+    public DerivacionFrecuencias getDerivacionFrecuencias() {
+        return derivacionFrecuencias;
+    }
+
+    /**
+     * @param derivacionFrecuencias si se indica, en las altas de planes derivables sólo se simula en
+     *                              remoto la frecuencia mensual y el resto se calcula a partir de ella
+     */
+    public void setDerivacionFrecuencias(final DerivacionFrecuencias derivacionFrecuencias) {
+        this.derivacionFrecuencias = derivacionFrecuencias;
+    }
+
+    /**
+     * @return the cacheCatalogos
+     */
+    public CacheCatalogosPlan getCacheCatalogos() {
+        return cacheCatalogos;
+    }
+
+    /**
+     * @param cacheCatalogos si se indica, el índice de cada plan se reutiliza entre peticiones en
+     *                       lugar de construirse en cada una
+     */
+    public void setCacheCatalogos(final CacheCatalogosPlan cacheCatalogos) {
+        this.cacheCatalogos = cacheCatalogos;
+    }
+
+    /**
+     * @return the promocionesRechazadas
+     */
+    public CachePromocionesRechazadas getPromocionesRechazadas() {
+        return promocionesRechazadas;
+    }
+
+    /**
+     * @param promocionesRechazadas si se indica, los códigos promocionales rechazados por el servicio
+     *                              se quitan de las siguientes simulaciones del mismo plan y mediador
+     */
+    public void setPromocionesRechazadas(final CachePromocionesRechazadas promocionesRechazadas) {
+        this.promocionesRechazadas = promocionesRechazadas;
+    }
+
+    /**
+     * @return the politicaReintentos
+     */
+    public PoliticaReintentos getPoliticaReintentos() {
+        return politicaReintentos;
+    }
+
+    /**
+     * @param politicaReintentos política con la que se repiten las simulaciones fallidas; si no se
+     *                           indica se usa {@link PoliticaReintentos#porDefecto()}
+     */
+    public void setPoliticaReintentos(final PoliticaReintentos politicaReintentos) {
+        this.politicaReintentos = politicaReintentos;
+    }
+
+    /**
+     * @return the limitador
+     */
+    public LimitadorSimulaciones getLimitador() {
+        return limitador;
+    }
+
+    /**
+     * @param limitador si se indica, limita las llamadas simultáneas al servicio de simulación; se
+     *                  comparte entre todos los RealizarSimulacion del proceso
+     */
+    public void setLimitador(final LimitadorSimulaciones limitador) {
+        this.limitador = limitador;
+    }
+
+    /**
+     * @return the ejecutor
+     */
+    public synchronized EjecutorSimulaciones getEjecutor() {
+        return ejecutor;
+    }
+
+    /**
+     * @param ejecutor the ejecutor to set, puede compartirse entre varios beans
+     */
+    public synchronized void setEjecutor(final EjecutorSimulaciones ejecutor) {
+        this.ejecutor = ejecutor;
+        this.ejecutorPropio = false;
+    }
+
+    /**
+     * @return the planificador
+     */
+    public PlanificadorSimulaciones getPlanificador() {
+        return planificador;
+    }
+
+    /**
+     * @param planificador si se indica, las simulaciones se ejecutan en su compartimento de operación
+     *                     y prioridad en lugar de en el ejecutor; puede compartirse entre varios beans
+     */
+    public void setPlanificador(final PlanificadorSimulaciones planificador) {
+        this.planificador = planificador;
+    }
+
+    /**
+     * @return the prioridad
+     */
+    public PlanificadorSimulaciones.Prioridad getPrioridad() {
+        return prioridad;
+    }
+
+    /**
+     * @param prioridad prioridad de las simulaciones de este bean en el planificador, según el canal
+     *                  que lo usa; por defecto INTERACTIVA
+     */
+    public void setPrioridad(final PlanificadorSimulaciones.Prioridad prioridad) {
+        this.prioridad = prioridad;
+    }
+
+    /**
+     * Con planificador, el compartimento de la operación y la prioridad del bean; si no, el ejecutor.
+     *
+     * @param lBeneficiarios beneficiarios a incluir, o null si es un alta
+     */
+    private Executor obtenerEjecutor(final List<BeneficiarioPolizas> lBeneficiarios) {
+        if (planificador == null) {
+            return obtenerEjecutor();
+        }
+        final int operacion = lBeneficiarios != null
+                ? StaticVarsContratacion.INCLUSION_BENEFICIARIO : StaticVarsContratacion.ALTA_POLIZA;
+        return planificador.ejecutor(operacion, prioridad);
+    }
+
+    /**
+     * Si no se ha inyectado un ejecutor se crea uno propio con la configuración por defecto.
+     */
+    private synchronized EjecutorSimulaciones obtenerEjecutor() {
+        if (ejecutor == null) {
+            ejecutor = new EjecutorSimulaciones();
+            ejecutorPropio = true;
+        }
+        return ejecutor;
+    }
+
+    /**
+     * Apaga el ejecutor sólo si lo ha creado este bean; los inyectados los gestiona el contexto.
+     */
+    @Override
+    public void destroy() throws Exception {
+        final EjecutorSimulaciones propio;
+        synchronized (this) {
+            propio = ejecutorPropio ? ejecutor : null;
+        }
+        if (propio != null) {
+            propio.destroy();
+        }
+    }
+
     /**
      * Comprueba si pertenece la excepcion a la lista.
      *
-     * @param lExcepciones Lista de excepciones.
-     * @param comprobar    Dato a comprobar.
+     * @param excepciones {@link ExcepcionesSet} o lista de excepciones de los valores de sesión.
+     * @param comprobar   Dato a comprobar.
      * @return True si pertenece false en caso contrario.
      */
-    private static boolean comprobarExcepcion(final List<String> lExcepciones, final String comprobar) {
+    @SuppressWarnings("unchecked")
+    private static boolean comprobarExcepcion(final Object excepciones, final String comprobar) {
+        if (excepciones instanceof ExcepcionesSet) {
+            return ((ExcepcionesSet) excepciones).contiene(comprobar);
+        }
+        final List<String> lExcepciones = (List<String>) excepciones;
         LOG.debug("Se va a comprobar si " + comprobar + " esta en la lista " + lExcepciones);
         boolean bExcepcion = false;
         if (comprobar != null && lExcepciones != null && lExcepciones.contains(comprobar)) {
@@ -426,4 +861,49 @@ public class RealizarSimulacion implements IRealizarSimulacion {
         return bExcepcion;
     }
 
+    /**
+     * Datos de una simulación que se comparten entre sus frecuencias.
+     */
+    private final class ContextoTarificacion {
+        private final DatosAlta oDatosAlta;
+        private final CatalogoPlan catalogo;
+        /** Productos que no se tarifican, según las excepciones y las tarjetas de los asegurados. */
+        private final FiltroProductos filtro;
+        private final ReceptorSimulacion receptor;
+        private final long idPlan;
+        private final DerivacionFrecuencias derivacion;
+        /** Frecuencias que se simulan en el servicio remoto. */
+        private final Set<FrecuenciaEnum> frecuenciasRemotas;
+        /** Frecuencias que se calculan a partir de la mensual. */
+        private final Set<FrecuenciaEnum> frecuenciasDerivadas;
+
+        private ContextoTarificacion(final DatosAlta oDatosAlta, final List<BeneficiarioPolizas> lBeneficiarios,
+                                     final Map<String, Object> hmValores, final ReceptorSimulacion receptor) {
+            this.oDatosAlta = oDatosAlta;
+            final Object excepciones = hmValores.get(StaticVarsContratacion.LIST_EXCEPCIONES);
+            this.filtro = FiltroProductos.de(comprobarExcepcion(excepciones, StaticVarsContratacion.PROMO_ECI_COLECTIVOS),
+                    comprobarExcepcion(excepciones, StaticVarsContratacion.PROMO_FARMACIA), hayTarjetas(oDatosAlta));
+            this.receptor = receptor;
+            this.idPlan = oDatosAlta.getIdPlan();
+
+            final DatosContratacionPlan oDatosPlan = (DatosContratacionPlan) hmValores.get(StaticVarsContratacion.DATOS_PLAN);
+            final CacheCatalogosPlan cache = cacheCatalogos;
+            this.catalogo = cache != null ? cache.obtener(idPlan, oDatosPlan) : CatalogoPlan.de(oDatosPlan);
+
+            this.derivacion = derivacionFrecuencias;
+
+            final Set<FrecuenciaEnum> frecuenciasTarificar = obtenerFrecuenciasTarificar(oDatosAlta, lBeneficiarios, hmValores);
+            this.frecuenciasRemotas = EnumSet.copyOf(frecuenciasTarificar);
+            this.frecuenciasDerivadas = EnumSet.noneOf(FrecuenciaEnum.class);
+            if (derivacion != null && lBeneficiarios == null && frecuenciasTarificar.contains(FrecuenciaEnum.MENSUAL)) {
+                // Sólo se derivan las frecuencias con factor configurado; el resto se simulan en remoto
+                for (final FrecuenciaEnum frecuencia : frecuenciasTarificar) {
+                    if (derivacion.esDerivable(idPlan, frecuencia)) {
+                        frecuenciasDerivadas.add(frecuencia);
+                        frecuenciasRemotas.remove(frecuencia);
+                    }
+                }
+            }
+        }
+    }
 }
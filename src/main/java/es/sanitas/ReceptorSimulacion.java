@@ -0,0 +1,18 @@
+package es.sanitas;
+
+import es.sanitas.soporte.FrecuenciaEnum;
+
+/**
+ * Recibe el resultado de cada frecuencia de pago en cuanto termina su simulación, sin esperar al
+ * resto de frecuencias.
+ */
+public interface ReceptorSimulacion {
+
+    /**
+     * Se invoca una vez por cada frecuencia simulada correctamente, en el orden en que terminan.
+     *
+     * @param frecuencia frecuencia de pago simulada
+     * @param resultado  primas, promociones y recibos de la frecuencia
+     */
+    void frecuenciaSimulada(FrecuenciaEnum frecuencia, ResultadoFrecuencia resultado);
+}
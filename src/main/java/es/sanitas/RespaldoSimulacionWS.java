@@ -0,0 +1,290 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorador de {@link SimulacionWS} que, si la respuesta tarda más de lo habitual, envía una
+ * segunda simulación idéntica y se queda con la primera respuesta que llega (hedged requests).
+ * <p>
+ * El retraso antes de enviar el respaldo es un percentil de la latencia observada del servicio
+ * (p.e. el p95), por lo que sólo se duplican las llamadas de la cola lenta. El percentil se calcula
+ * sólo con las llamadas originales, incluidas las que pierden frente al respaldo. La llamada que
+ * pierde se cancela interrumpiendo su hilo. Para no multiplicar la carga cuando el servicio está
+ * degradado, los respaldos consumen un presupuesto: cada simulación aporta una fracción de respaldo
+ * y cada respaldo gasta uno entero.
+ * <p>
+ * Las llamadas se hacen en un ejecutor propio, o en el indicado, y el hilo que simula espera el
+ * resultado dentro de su {@link Plazo}. Se configura envolviendo el servicio real antes de pasarlo a
+ * {@link RealizarSimulacion#setServicioSimulacion(SimulacionWS)}.
+ */
+public class RespaldoSimulacionWS implements SimulacionWS, DisposableBean {
+
+    private static final double PERCENTIL_POR_DEFECTO = 0.95;
+    private static final long RETRASO_INICIAL_POR_DEFECTO = 1000;
+    private static final int MUESTRAS = 256;
+    private static final int MINIMO_MUESTRAS = 32;
+    private static final int RECALCULO = 16;
+    private static final double PROPORCION_POR_DEFECTO = 0.05;
+    private static final int PRESUPUESTO_MAXIMO_POR_DEFECTO = 10;
+    private static final int HILOS = 32;
+
+    private final SimulacionWS delegado;
+    private final Executor ejecutor;
+    private final EjecutorSimulaciones ejecutorPropio;
+    private final double percentil;
+
+    // Últimas latencias en milisegundos, protegidas por this
+    private final long[] latencias = new long[MUESTRAS];
+    private int posicion;
+    private int muestras;
+    private volatile long retrasoMillis;
+
+    private final Object bloqueoPresupuesto = new Object();
+    private double proporcionPresupuesto = PROPORCION_POR_DEFECTO;
+    private double presupuestoMaximo = PRESUPUESTO_MAXIMO_POR_DEFECTO;
+    private double presupuesto = PRESUPUESTO_MAXIMO_POR_DEFECTO;
+
+    private final AtomicLong respaldos = new AtomicLong();
+    private final AtomicLong ganados = new AtomicLong();
+    private final AtomicLong denegados = new AtomicLong();
+
+    public RespaldoSimulacionWS(final SimulacionWS delegado) {
+        this(delegado, null, PERCENTIL_POR_DEFECTO, RETRASO_INICIAL_POR_DEFECTO);
+    }
+
+    /**
+     * @param delegado             servicio de simulación real
+     * @param ejecutor             ejecutor de las llamadas; si es null se crea uno propio que se
+     *                             apaga al cerrarse el contexto
+     * @param percentil            percentil de la latencia (0-1) tras el que se envía el respaldo
+     * @param retrasoInicialMillis retraso mientras no hay latencias suficientes para el percentil
+     */
+    public RespaldoSimulacionWS(final SimulacionWS delegado, final Executor ejecutor, final double percentil,
+                                final long retrasoInicialMillis) {
+        if (percentil <= 0 || percentil > 1) {
+            throw new IllegalArgumentException("El percentil debe estar entre 0 y 1");
+        }
+        this.delegado = delegado;
+        if (ejecutor != null) {
+            this.ejecutor = ejecutor;
+            this.ejecutorPropio = null;
+        } else {
+            // Sin apenas cola: un respaldo que espera turno ya no recorta la latencia
+            this.ejecutorPropio = new EjecutorSimulaciones(HILOS, HILOS, 1, EjecutorSimulaciones.PoliticaRechazo.ABORTAR,
+                    "simulacion-respaldo");
+            this.ejecutor = ejecutorPropio;
+        }
+        this.percentil = percentil;
+        this.retrasoMillis = retrasoInicialMillis;
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        final Plazo plazo = Plazo.actual();
+        synchronized (bloqueoPresupuesto) {
+            presupuesto = Math.min(presupuestoMaximo, presupuesto + proporcionPresupuesto);
+        }
+
+        final CompletableFuture<Respuesta> resultado = new CompletableFuture<>();
+        final AtomicInteger enCurso = new AtomicInteger();
+        final AtomicBoolean medida = new AtomicBoolean();
+        final long inicio = System.nanoTime();
+        final FutureTask<Void> principal = lanzar(in, plazo, resultado, enCurso, medida);
+        if (principal == null) {
+            // Sin hilos para la llamada: se hace en el hilo actual, sin respaldo
+            return delegado.simular(in);
+        }
+        FutureTask<Void> respaldo = null;
+        try {
+            try {
+                return resultado.get(Math.min(retrasoMillis, restante(plazo)), TimeUnit.MILLISECONDS).response;
+            } catch (final TimeoutException e) {
+                // La llamada va lenta: se envía el respaldo si hay presupuesto
+            }
+            if (!resultado.isDone() && restante(plazo) > 0 && gastarPresupuesto()) {
+                respaldo = lanzar(in, plazo, resultado, enCurso, null);
+            }
+            final Respuesta respuesta = plazo == null ? resultado.get() : resultado.get(restante(plazo), TimeUnit.MILLISECONDS);
+            if (respuesta.deRespaldo) {
+                ganados.incrementAndGet();
+            }
+            return respuesta.response;
+        } catch (final TimeoutException e) {
+            throw new IllegalStateException("Agotado el plazo esperando la simulacion", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpida la espera de la simulacion", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Si la llamada original no ha terminado, su latencia es al menos lo que se ha esperado:
+            // sin esta muestra censurada el percentil sólo vería las llamadas rápidas
+            if (medida.compareAndSet(false, true)) {
+                registrarLatencia(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+            }
+            // La llamada que no ha ganado ya no se va a leer
+            principal.cancel(true);
+            if (respaldo != null) {
+                respaldo.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Envía una llamada al ejecutor. La primera respuesta completa el resultado; un fallo sólo lo
+     * completa si no queda ninguna otra llamada en curso.
+     *
+     * @param medida en la llamada original, marca de latencia ya registrada; null en el respaldo
+     * @return la tarea enviada, o null si el ejecutor la ha rechazado
+     */
+    private FutureTask<Void> lanzar(final Simulacion in, final Plazo plazo,
+                                    final CompletableFuture<Respuesta> resultado,
+                                    final AtomicInteger enCurso, final AtomicBoolean medida) {
+        final boolean esRespaldo = medida == null;
+        enCurso.incrementAndGet();
+        final FutureTask<Void> tarea = new FutureTask<>(() -> {
+            final long inicio = System.nanoTime();
+            Plazo.establecer(plazo);
+            try {
+                final RESTResponse<Tarificacion, Error> response = delegado.simular(in);
+                if (!esRespaldo && medida.compareAndSet(false, true)) {
+                    registrarLatencia(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+                }
+                resultado.complete(new Respuesta(response, esRespaldo));
+            } catch (final RuntimeException | java.lang.Error e) {
+                // Un fallo no dice nada de la latencia del servicio
+                if (!esRespaldo) {
+                    medida.set(true);
+                }
+                if (enCurso.decrementAndGet() == 0) {
+                    resultado.completeExceptionally(e);
+                }
+            } finally {
+                Plazo.limpiar();
+            }
+            return null;
+        });
+        try {
+            ejecutor.execute(tarea);
+        } catch (final RejectedExecutionException ree) {
+            enCurso.decrementAndGet();
+            return null;
+        }
+        if (esRespaldo) {
+            respaldos.incrementAndGet();
+        }
+        return tarea;
+    }
+
+    private boolean gastarPresupuesto() {
+        synchronized (bloqueoPresupuesto) {
+            if (presupuesto < 1) {
+                denegados.incrementAndGet();
+                return false;
+            }
+            presupuesto -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Registra la latencia de una llamada original y cada cierto número de llamadas recalcula el
+     * retraso del respaldo. De las llamadas canceladas se registra el tiempo transcurrido hasta la
+     * cancelación, que es una cota inferior de su latencia.
+     */
+    private synchronized void registrarLatencia(final long millis) {
+        latencias[posicion] = millis;
+        posicion = (posicion + 1) % MUESTRAS;
+        muestras++;
+        if (muestras >= MINIMO_MUESTRAS && muestras % RECALCULO == 0) {
+            final long[] ordenadas = Arrays.copyOf(latencias, Math.min(muestras, MUESTRAS));
+            Arrays.sort(ordenadas);
+            final int indice = (int) Math.ceil(percentil * ordenadas.length) - 1;
+            retrasoMillis = Math.max(1, ordenadas[Math.max(0, indice)]);
+        }
+    }
+
+    private static final class Respuesta {
+        private final RESTResponse<Tarificacion, Error> response;
+        private final boolean deRespaldo;
+
+        private Respuesta(final RESTResponse<Tarificacion, Error> response, final boolean deRespaldo) {
+            this.response = response;
+            this.deRespaldo = deRespaldo;
+        }
+    }
+
+    private static long restante(final Plazo plazo) {
+        return plazo == null ? Long.MAX_VALUE : plazo.getRestante(TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apaga el ejecutor propio, si se ha creado.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (ejecutorPropio != null) {
+            ejecutorPropio.destroy();
+        }
+    }
+
+    /**
+     * @param proporcion respaldos que aporta cada simulación al presupuesto (p.e. 0.05 = uno de cada veinte)
+     * @param maximo     respaldos que se pueden acumular
+     */
+    public void setPresupuesto(final double proporcion, final int maximo) {
+        synchronized (bloqueoPresupuesto) {
+            this.proporcionPresupuesto = proporcion;
+            this.presupuestoMaximo = maximo;
+            this.presupuesto = Math.min(presupuesto, maximo);
+        }
+    }
+
+    /**
+     * @return retraso actual antes de enviar el respaldo, en milisegundos
+     */
+    public long getRetrasoMillis() {
+        return retrasoMillis;
+    }
+
+    /**
+     * @return respaldos enviados
+     */
+    public long getRespaldos() {
+        return respaldos.get();
+    }
+
+    /**
+     * @return respaldos que han respondido antes que la llamada original
+     */
+    public long getGanados() {
+        return ganados.get();
+    }
+
+    /**
+     * @return respaldos no enviados por falta de presupuesto
+     */
+    public long getDenegados() {
+        return denegados.get();
+    }
+}
@@ -0,0 +1,103 @@
+package es.sanitas;
+
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.PrimasPorProducto;
+import es.sanitas.soporte.PromocionAplicada;
+import es.sanitas.soporte.Recibo;
+
+import java.util.List;
+
+/**
+ * Resultado agregado de la simulación de una única frecuencia de pago.
+ */
+public class ResultadoFrecuencia {
+
+    private final FrecuenciaEnum frecuencia;
+    private final List<List<PrimasPorProducto>> primasDesglosadas;
+    private final double[][] primas;
+    private final List<PromocionAplicada> promociones;
+    private final List<Recibo> recibos;
+    private final double descuentoTotal;
+    private final double pagoTotal;
+    private final Double precioConPromocion;
+    private final String codigoError;
+
+    public ResultadoFrecuencia(final FrecuenciaEnum frecuencia, final List<List<PrimasPorProducto>> primasDesglosadas,
+                               final double[][] primas, final List<PromocionAplicada> promociones, final List<Recibo> recibos,
+                               final double descuentoTotal, final double pagoTotal,
+                               final Double precioConPromocion, final String codigoError) {
+        this.frecuencia = frecuencia;
+        this.primasDesglosadas = primasDesglosadas;
+        this.primas = primas;
+        this.promociones = promociones;
+        this.recibos = recibos;
+        this.descuentoTotal = descuentoTotal;
+        this.pagoTotal = pagoTotal;
+        this.precioConPromocion = precioConPromocion;
+        this.codigoError = codigoError;
+    }
+
+    /**
+     * @return the frecuencia
+     */
+    public FrecuenciaEnum getFrecuencia() {
+        return frecuencia;
+    }
+
+    /**
+     * @return primas de cada producto tarificable, agrupadas por asegurado
+     */
+    public List<List<PrimasPorProducto>> getPrimasDesglosadas() {
+        return primasDesglosadas;
+    }
+
+    /**
+     * @return prima de cada producto tarificable por asegurado, en el mismo orden que
+     * {@link #getPrimasDesglosadas()}; el array se comparte y no debe modificarse
+     */
+    public double[][] getPrimas() {
+        return primas;
+    }
+
+    /**
+     * @return promociones aplicadas a la póliza
+     */
+    public List<PromocionAplicada> getPromociones() {
+        return promociones;
+    }
+
+    /**
+     * @return recibos del primer año, null si el servicio no los ha devuelto
+     */
+    public List<Recibo> getRecibos() {
+        return recibos;
+    }
+
+    /**
+     * @return suma de los descuentos de todos los productos
+     */
+    public double getDescuentoTotal() {
+        return descuentoTotal;
+    }
+
+    /**
+     * @return suma de prima, impuestos y descuento de todos los productos
+     */
+    public double getPagoTotal() {
+        return pagoTotal;
+    }
+
+    /**
+     * @return importe del primer recibo sin el consorcio, null si no hay recibos
+     */
+    public Double getPrecioConPromocion() {
+        return precioConPromocion;
+    }
+
+    /**
+     * @return código de error no bloqueante de la simulación (p.e. código promocional no válido)
+     */
+    public String getCodigoError() {
+        return codigoError;
+    }
+}
@@ -0,0 +1,275 @@
+package es.sanitas;
+
+import es.sanitas.bravo.ws.stubs.contratacionws.documentacion.Primas;
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.PrimasPorProducto;
+import es.sanitas.soporte.PromocionAplicada;
+import es.sanitas.soporte.Recibo;
+import es.sanitas.soporte.StaticVarsContratacion;
+import es.sanitas.soporte.TipoPromocionEnum;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resultado completo de una simulación, con los totales de cada frecuencia en arrays de primitivos
+ * indexados por {@link FrecuenciaEnum#ordinal()}.
+ * <p>
+ * Los llamantes que todavía trabajan con el Map de {@link IRealizarSimulacion#realizarSimulacion}
+ * pueden usar {@link #asLegacyMap()}, que sólo construye las claves antiguas la primera vez que se
+ * accede a él.
+ */
+public final class ResultadoSimulacion {
+
+    private static final int FRECUENCIAS = FrecuenciaEnum.values().length;
+
+    private final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados;
+    private final boolean desglosar;
+    private final double[] descuentosTotales = new double[FRECUENCIAS];
+    private final double[] pagoTotal = new double[FRECUENCIAS];
+    private final double[] precioConPromocion = new double[FRECUENCIAS];
+    private final ResultadoFrecuencia desglose;
+    private final int numeroAsegurados;
+    private final List<List<PromocionAplicada>> promociones;
+    private final List<List<Recibo>> recibos;
+    private final List<String> errores;
+    private final boolean promocionDescuento;
+
+    /**
+     * @param resultados resultado de cada frecuencia simulada; no puede estar vacío
+     * @param desglosar  si se ha pedido el desglose por producto
+     */
+    ResultadoSimulacion(final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados, final boolean desglosar) {
+        final Map<FrecuenciaEnum, ResultadoFrecuencia> copia = new EnumMap<>(FrecuenciaEnum.class);
+        copia.putAll(resultados);
+        this.resultados = Collections.unmodifiableMap(copia);
+        this.desglosar = desglosar;
+
+        final List<List<PromocionAplicada>> promocionesFrecuencias = new ArrayList<>(copia.size());
+        final List<List<Recibo>> recibosFrecuencias = new ArrayList<>(copia.size());
+        final List<String> erroresFrecuencias = new ArrayList<>();
+        ResultadoFrecuencia ultima = null;
+        int asegurados = 0;
+        for (final ResultadoFrecuencia resultado : copia.values()) {
+            final int indice = resultado.getFrecuencia().ordinal();
+            if (!StringUtils.isEmpty(resultado.getCodigoError())) {
+                erroresFrecuencias.add(resultado.getCodigoError());
+            }
+            asegurados = Math.max(asegurados, resultado.getPrimasDesglosadas().size());
+            descuentosTotales[indice] += resultado.getDescuentoTotal();
+            pagoTotal[indice] += resultado.getPagoTotal();
+            promocionesFrecuencias.add(resultado.getPromociones());
+            if (resultado.getRecibos() != null) {
+                recibosFrecuencias.add(resultado.getRecibos());
+                // Importe del primer recibo sin el impuesto del consorcio
+                if (resultado.getPrecioConPromocion() != null) {
+                    precioConPromocion[indice] = resultado.getPrecioConPromocion();
+                }
+            }
+            ultima = resultado;
+        }
+        // El desglose por producto muestra la última frecuencia tarificada
+        this.desglose = ultima;
+        this.numeroAsegurados = asegurados;
+        this.promociones = promocionesFrecuencias;
+        this.recibos = recibosFrecuencias;
+        this.errores = erroresFrecuencias;
+        this.promocionDescuento = hayPromocionDescuento(promocionesFrecuencias);
+    }
+
+    /**
+     * @param frecuencia frecuencia de pago
+     * @return resultado de la frecuencia, o null si no se ha obtenido
+     */
+    public ResultadoFrecuencia getResultado(final FrecuenciaEnum frecuencia) {
+        return resultados.get(frecuencia);
+    }
+
+    /**
+     * @return resultado de cada frecuencia obtenida, en el orden de {@link FrecuenciaEnum}
+     */
+    public Map<FrecuenciaEnum, ResultadoFrecuencia> getResultados() {
+        return resultados;
+    }
+
+    /**
+     * @param frecuencia frecuencia de pago
+     * @return suma de los descuentos de la frecuencia; 0 si no se ha obtenido
+     */
+    public double getDescuentoTotal(final FrecuenciaEnum frecuencia) {
+        return descuentosTotales[frecuencia.ordinal()];
+    }
+
+    /**
+     * @param frecuencia frecuencia de pago
+     * @return suma de prima, impuestos y descuento de la frecuencia; 0 si no se ha obtenido
+     */
+    public double getPagoTotal(final FrecuenciaEnum frecuencia) {
+        return pagoTotal[frecuencia.ordinal()];
+    }
+
+    /**
+     * @param frecuencia frecuencia de pago
+     * @return importe del primer recibo sin el consorcio; 0 si no hay recibos
+     */
+    public double getPrecioConPromocion(final FrecuenciaEnum frecuencia) {
+        return precioConPromocion[frecuencia.ordinal()];
+    }
+
+    /**
+     * @param frecuencia frecuencia de pago
+     * @return importe a mostrar: el precio con promoción si se ha aplicado un descuento en la
+     * prima, si no el pago total
+     */
+    public double getPrecioFinal(final FrecuenciaEnum frecuencia) {
+        return promocionDescuento ? getPrecioConPromocion(frecuencia) : getPagoTotal(frecuencia);
+    }
+
+    /**
+     * @return true si alguna promoción aplicada es un descuento sobre la prima
+     */
+    public boolean isPromocionDescuento() {
+        return promocionDescuento;
+    }
+
+    /**
+     * @return número de asegurados tarificados
+     */
+    public int getNumeroAsegurados() {
+        return numeroAsegurados;
+    }
+
+    /**
+     * @return prima de cada producto por asegurado en la frecuencia del desglose
+     */
+    public double[][] getPrimas() {
+        return desglose.getPrimas();
+    }
+
+    /**
+     * @return desglose por producto y asegurado de la última frecuencia tarificada
+     */
+    public List<List<PrimasPorProducto>> getPrimasDesglosadas() {
+        return desglose.getPrimasDesglosadas();
+    }
+
+    /**
+     * @return códigos de error no bloqueantes de las frecuencias simuladas
+     */
+    public List<String> getErrores() {
+        return errores;
+    }
+
+    /**
+     * @return vista con las claves de {@link StaticVarsContratacion} que devolvía la simulación;
+     * se construye al primer acceso y admite modificaciones como el HashMap original
+     */
+    public Map<String, Object> asLegacyMap() {
+        return new VistaLegada();
+    }
+
+    private Map<String, Object> construirMapaLegado() {
+        final List<Primas> primas = new ArrayList<>(numeroAsegurados);
+        for (int i = 0; i < numeroAsegurados; i++) {
+            primas.add(new Primas());
+        }
+        final Map<String, Object> hmSimulacion = new HashMap<>();
+        hmSimulacion.put(StaticVarsContratacion.PRIMAS_SIMULACION, primas);
+        hmSimulacion.put(StaticVarsContratacion.PRIMAS_SIMULACION_DESGLOSE, getPrimasDesglosadas());
+        hmSimulacion.put(StaticVarsContratacion.SIMULACION_PROVINCIA, "Madrid");
+        hmSimulacion.put(StaticVarsContratacion.HAY_DESGLOSE, desglosar);
+        hmSimulacion.put(StaticVarsContratacion.DESCUENTOS_TOTALES, aDoubles(descuentosTotales));
+        hmSimulacion.put(StaticVarsContratacion.TOTAL_ASEGURADOS, primas);
+        hmSimulacion.put(StaticVarsContratacion.PROMOCIONES_SIMULACION, promociones);
+        hmSimulacion.put(StaticVarsContratacion.RECIBOS_SIMULACION, recibos);
+        hmSimulacion.put(StaticVarsContratacion.PAGO_TOTAL,
+                aDoubles(promocionDescuento ? precioConPromocion : pagoTotal));
+        hmSimulacion.put(StaticVarsContratacion.ERROR, errores);
+        return hmSimulacion;
+    }
+
+    private static Double[] aDoubles(final double[] valores) {
+        final Double[] convertidos = new Double[valores.length];
+        for (int i = 0; i < valores.length; i++) {
+            convertidos[i] = valores[i];
+        }
+        return convertidos;
+    }
+
+    /**
+     * Comprueba si alguna de las promociones aplicadas en la simulación es un descuento en la
+     * prima.
+     */
+    private static boolean hayPromocionDescuento(final List<List<PromocionAplicada>> promocionesAplicadas) {
+        for (final List<PromocionAplicada> promociones : promocionesAplicadas) {
+            if (promociones == null) {
+                continue;
+            }
+            for (final PromocionAplicada promocion : promociones) {
+                if (promocion != null && TipoPromocionEnum.DESCUENTO_PORCENTAJE.equals(promocion.getTipoPromocion())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Map con las claves antiguas que no se construye hasta que alguien lo lee o lo modifica.
+     */
+    private final class VistaLegada extends AbstractMap<String, Object> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient Map<String, Object> mapa;
+
+        private Map<String, Object> mapa() {
+            if (mapa == null) {
+                mapa = construirMapaLegado();
+            }
+            return mapa;
+        }
+
+        @Override
+        public Object get(final Object key) {
+            return mapa().get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return mapa().containsKey(key);
+        }
+
+        @Override
+        public Object put(final String key, final Object value) {
+            return mapa().put(key, value);
+        }
+
+        @Override
+        public Object remove(final Object key) {
+            return mapa().remove(key);
+        }
+
+        @Override
+        public int size() {
+            return mapa().size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return mapa().entrySet();
+        }
+
+        /** Se serializa como el HashMap que devolvía la simulación. */
+        private Object writeReplace() {
+            return new HashMap<>(mapa());
+        }
+    }
+}
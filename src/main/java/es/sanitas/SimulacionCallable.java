@@ -2,9 +2,7 @@ package es.sanitas;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosCobertura;
 import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
-import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosPlanProducto;
 import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.*;
 import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
 import es.sanitas.soporte.*;
@@ -17,9 +15,9 @@ import wscontratacion.contratacion.fuentes.parametros.DatosAlta;
 import wscontratacion.contratacion.fuentes.parametros.DatosDomicilio;
 import wscontratacion.contratacion.fuentes.parametros.DatosProductoAlta;
 
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 public class SimulacionCallable implements Callable<TarificacionPoliza> {
 
@@ -27,27 +25,55 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
 
 
     private static final String LINE_BREAK = "<br/>";
-    private static final String DATE_FORMAT = "dd/MM/yyyy";
     private static final String SEPARADOR_TIER = "#";
 
 
-    private final DatosContratacionPlan oDatosPlan;
+    private final CatalogoPlan catalogo;
     private final DatosAlta oDatosAlta;
     private final List<ProductoPolizas> lProductos;
     private final List<BeneficiarioPolizas> lBeneficiarios;
     private final FrecuenciaEnum frecuencia;
     private final SimulacionWS servicioSimulacion;
+    private final Plazo plazo;
+    private final CachePromocionesRechazadas promocionesRechazadas;
+    private final PoliticaReintentos politicaReintentos;
+    private final LimitadorSimulaciones limitador;
 
     public SimulacionCallable(final DatosContratacionPlan oDatosPlan, final DatosAlta oDatosAlta,
                               final List<ProductoPolizas> lProductos, final List<BeneficiarioPolizas> lBeneficiarios,
-                              final FrecuenciaEnum frecuencia, SimulacionWS servicioSimulacion) {
+                              final FrecuenciaEnum frecuencia, SimulacionWS servicioSimulacion, final Plazo plazo) {
+        this(CatalogoPlan.de(oDatosPlan), oDatosAlta, lProductos, lBeneficiarios, frecuencia, servicioSimulacion, plazo);
+    }
+
+    public SimulacionCallable(final CatalogoPlan catalogo, final DatosAlta oDatosAlta,
+                              final List<ProductoPolizas> lProductos, final List<BeneficiarioPolizas> lBeneficiarios,
+                              final FrecuenciaEnum frecuencia, SimulacionWS servicioSimulacion, final Plazo plazo) {
+        this(catalogo, oDatosAlta, lProductos, lBeneficiarios, frecuencia, servicioSimulacion, plazo, null, null, null);
+    }
 
-        this.oDatosPlan = oDatosPlan;
+    /**
+     * @param promocionesRechazadas códigos promocionales ya rechazados por el servicio, puede ser null
+     * @param politicaReintentos    política de reintentos; si es null se usa
+     *                              {@link PoliticaReintentos#porDefecto()}
+     * @param limitador             límite de llamadas simultáneas al servicio, puede ser null
+     */
+    public SimulacionCallable(final CatalogoPlan catalogo, final DatosAlta oDatosAlta,
+                              final List<ProductoPolizas> lProductos, final List<BeneficiarioPolizas> lBeneficiarios,
+                              final FrecuenciaEnum frecuencia, SimulacionWS servicioSimulacion, final Plazo plazo,
+                              final CachePromocionesRechazadas promocionesRechazadas,
+                              final PoliticaReintentos politicaReintentos,
+                              final LimitadorSimulaciones limitador) {
+
+        this.catalogo = catalogo;
         this.oDatosAlta = oDatosAlta;
         this.lProductos = lProductos;
         this.lBeneficiarios = lBeneficiarios;
         this.frecuencia = frecuencia;
         this.servicioSimulacion = servicioSimulacion;
+        this.plazo = plazo;
+        this.promocionesRechazadas = promocionesRechazadas;
+        this.politicaReintentos = politicaReintentos != null ? politicaReintentos : PoliticaReintentos.porDefecto();
+        this.limitador = limitador;
     }
     @Override
     public TarificacionPoliza call() throws Exception {
@@ -56,7 +82,10 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
 
     private TarificacionPoliza simular() throws ExcepcionContratacion {
 
-        TarificacionPoliza resultado;
+        if (plazo != null && plazo.haExpirado()) {
+            throw new ExcepcionContratacion("Se ha agotado el tiempo para la simulacion en frecuencia " + frecuencia);
+        }
+
         final Simulacion in = new Simulacion();
 
         if (lBeneficiarios != null) {
@@ -64,34 +93,124 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
         } else {
             in.setOperacion(StaticVarsContratacion.ALTA_POLIZA);
         }
-        in.setInfoPromociones(obtenerInfoPromociones(oDatosAlta));
+        // Un código que el servicio ya ha rechazado para el plan y mediador no se vuelve a enviar
+        final String codigoPromocional = obtenerCodigoPromocional(oDatosAlta);
+        boolean sinPromocion = promocionesRechazadas != null
+                && promocionesRechazadas.estaRechazado(oDatosAlta.getIdPlan(), oDatosAlta.getIdMediador(), codigoPromocional);
+        in.setInfoPromociones(obtenerInfoPromociones(oDatosAlta, sinPromocion ? null : codigoPromocional));
         in.setInfoTier(obtenerTier(oDatosAlta));
-        in.setListaBeneficiarios(obtenerBeneficiarios(oDatosAlta, lProductos, lBeneficiarios, oDatosPlan));
+        in.setListaBeneficiarios(obtenerBeneficiarios(oDatosAlta, lProductos, lBeneficiarios, catalogo));
         in.setInfoContratacion(obtenerInfoContratacion(oDatosAlta, frecuencia, in.getOperacion()));
 
-        final RESTResponse<Tarificacion, Error> response = servicioSimulacion.simular(in);
-        if (!response.hasError() && response.out.getTarifas() != null) {
-            resultado = new TarificacionPoliza();
-            resultado.setTarificacion(response.out);
+        politicaReintentos.registrarSimulacion();
+        // La repetición sin código promocional no cuenta como intento
+        int intentos = 1;
+        while (true) {
+            final RESTResponse<Tarificacion, Error> response = llamarServicio(in);
+            if (!response.hasError() && response.out.getTarifas() != null) {
+                final TarificacionPoliza resultado = new TarificacionPoliza();
+                resultado.setTarificacion(response.out);
+                resultado.setFrecuencia(frecuencia);
+                if (sinPromocion) {
+                    resultado.setCodigoError(StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL);
+                }
+                return resultado;
+            }
 
-            // Si se ha introducido un código promocional no válido se repite la simulación sin el
-            // código promocional
-        } else if (response.hasError() && StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL.equalsIgnoreCase(response.error.getCodigo())) {
-            if (oDatosAlta instanceof DatosAltaAsegurados) {
-                final DatosAltaAsegurados oDatosAltaAsegurados = (DatosAltaAsegurados) oDatosAlta;
-                oDatosAltaAsegurados.setCodigoPromocional(null);
+            PoliticaReintentos.TipoReintento tipo = politicaReintentos.clasificar(
+                    response.hasError() ? response.error.getCodigo() : null);
+            if (tipo == PoliticaReintentos.TipoReintento.SIN_PROMOCION) {
+                if (sinPromocion || codigoPromocional == null) {
+                    // Ya se ha enviado sin código: repetirla daría el mismo error
+                    tipo = PoliticaReintentos.TipoReintento.NINGUNO;
+                } else if (promocionesRechazadas != null) {
+                    promocionesRechazadas.registrarRechazo(oDatosAlta.getIdPlan(), oDatosAlta.getIdMediador(), codigoPromocional);
+                }
+            }
+            final long espera = politicaReintentos.reintentar(tipo, intentos, plazo);
+            if (espera < 0) {
+                LOG.error(toMensaje(in, response.rawResponse));
+                if (tipo == PoliticaReintentos.TipoReintento.NINGUNO) {
+                    throw new ExcepcionSimulacionRechazada(response.error.getDescripcion());
+                }
+                throw new ExcepcionContratacion(response.error.getDescripcion());
             }
             LOG.info(toMensaje(in, response.rawResponse));
 
-            resultado = simular();
-            resultado.setCodigoError(StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL);
-            return resultado;
-        } else {
-            LOG.error(toMensaje(in, response.rawResponse));
-            throw new ExcepcionContratacion(response.error.getDescripcion());
+            // Si se ha introducido un código promocional no válido se repite la simulación sin el
+            // código promocional; sólo se rehacen las promociones de la petición
+            if (tipo == PoliticaReintentos.TipoReintento.SIN_PROMOCION) {
+                sinPromocion = true;
+                in.setInfoPromociones(obtenerInfoPromociones(oDatosAlta, null));
+            } else {
+                intentos++;
+            }
+            esperar(espera);
         }
+    }
 
-        return resultado;
+    /**
+     * Llama al servicio dentro del plazo y, si hay limitador, ocupando uno de sus huecos.
+     */
+    private RESTResponse<Tarificacion, Error> llamarServicio(final Simulacion in) throws ExcepcionContratacion {
+        final LimitadorSimulaciones.Permiso permiso;
+        try {
+            permiso = limitador != null ? limitador.adquirir(plazo) : null;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcepcionContratacion("Se ha interrumpido la simulacion en frecuencia " + frecuencia);
+        }
+        boolean correcta = false;
+        boolean cancelada = false;
+        Plazo.establecer(plazo);
+        try {
+            final RESTResponse<Tarificacion, Error> response = servicioSimulacion.simular(in);
+            correcta = true;
+            return response;
+        } catch (final CircuitoSimulacionWS.CircuitoAbierto e) {
+            // No ha llegado al servicio: no dice nada de su latencia
+            if (permiso != null) {
+                permiso.descartar();
+            }
+            throw new ExcepcionServicioNoDisponible(e.getMessage());
+        } catch (final RuntimeException e) {
+            cancelada = esCancelacion(e);
+            throw e;
+        } finally {
+            Plazo.limpiar();
+            if (permiso != null) {
+                // Una llamada cancelada por el llamante tampoco dice nada de la latencia del servicio
+                if (cancelada || Thread.currentThread().isInterrupted()) {
+                    permiso.descartar();
+                } else {
+                    permiso.liberar(correcta);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true si el fallo se debe a la interrupción o cancelación de la llamada
+     */
+    private static boolean esCancelacion(final Throwable error) {
+        for (Throwable causa = error; causa != null; causa = causa.getCause()) {
+            if (causa instanceof InterruptedException || causa instanceof CancellationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void esperar(final long millis) throws ExcepcionContratacion {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExcepcionContratacion("Se ha interrumpido la simulacion en frecuencia " + frecuencia);
+        }
     }
 
     /**
@@ -115,16 +234,21 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
     }
 
 
-    private InfoPromociones obtenerInfoPromociones(final DatosAlta oDatosAlta) {
+    private String obtenerCodigoPromocional(final DatosAlta oDatosAlta) {
+        if (oDatosAlta instanceof DatosAltaAsegurados) {
+            return ((DatosAltaAsegurados) oDatosAlta).getCodigoPromocional();
+        }
+        return null;
+    }
+
+    private InfoPromociones obtenerInfoPromociones(final DatosAlta oDatosAlta, final String codigoPromocion) {
         InfoPromociones infoPromociones = null;
         if (oDatosAlta instanceof DatosAltaAsegurados) {
-            final DatosAltaAsegurados oDatosAltaAsegurados = (DatosAltaAsegurados) oDatosAlta;
             infoPromociones = new InfoPromociones();
             infoPromociones.setAutomaticas(StaticVarsContratacion.SIMULACION_PROMOCIONES_AUTOMATICAS);
             // Si no se ha introducido un código promocional se debe enviar
             // de cero elementos
             Promocion[] promociones = new Promocion[0];
-            final String codigoPromocion = oDatosAltaAsegurados.getCodigoPromocional();
             if (codigoPromocion != null) {
                 promociones = new Promocion[1];
                 final Promocion promocion = new Promocion();
@@ -210,7 +334,7 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
     }
 
     private Beneficiario[] obtenerBeneficiarios(final DatosAlta oDatosAlta, final List<ProductoPolizas> lProductos,
-                                                final List<BeneficiarioPolizas> lBeneficiarios, final DatosContratacionPlan oDatosPlan) {
+                                                final List<BeneficiarioPolizas> lBeneficiarios, final CatalogoPlan catalogo) {
         final List<Beneficiario> beneficiarios = new ArrayList<>();
 
         // Si hay lista de beneficiarios se trata de una inclusion de beneficiarios
@@ -226,7 +350,7 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
                     beneficiario.setIdProfesion(1);
                 }
                 beneficiario.setNombre(oBeneficiario.getDatosPersonales().getNombre());
-                final Producto[] productos = obtenerProductosAsegurado(oDatosAlta.getTitular().getProductosContratados(), oDatosPlan);
+                final Producto[] productos = obtenerProductosAsegurado(oDatosAlta.getTitular().getProductosContratados(), catalogo);
                 beneficiario.setListaProductos(productos);
                 beneficiarios.add(beneficiario);
             }
@@ -250,9 +374,9 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
             }
 
             // Si hay lista de productos se incluyen como productos añadidos al alta
-            Producto[] productos = obtenerProductosAsegurado(oDatosAlta.getTitular().getProductosContratados(), oDatosPlan);
+            Producto[] productos = obtenerProductosAsegurado(oDatosAlta.getTitular().getProductosContratados(), catalogo);
             if (lProductos != null && !lProductos.isEmpty()) {
-                productos = ArrayUtils.addAll(productos, obtenerProductos(lProductos.get(0).getProductos(), oDatosPlan));
+                productos = ArrayUtils.addAll(productos, obtenerProductos(lProductos.get(0).getProductos(), catalogo));
             }
             beneficiario.setListaProductos(productos);
 
@@ -280,9 +404,9 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
                         beneficiario.setIdCliente(oDatosAsegurado.getSIdCliente().intValue());
                     }
 
-                    productos = obtenerProductosAsegurado(oDatosAsegurado.getProductosContratados(), oDatosPlan);
+                    productos = obtenerProductosAsegurado(oDatosAsegurado.getProductosContratados(), catalogo);
                     if (lProductos != null && !lProductos.isEmpty()) {
-                        productos = ArrayUtils.addAll(productos, obtenerProductos(lProductos.get(contadorBeneficiario).getProductos(), oDatosPlan));
+                        productos = ArrayUtils.addAll(productos, obtenerProductos(lProductos.get(contadorBeneficiario).getProductos(), catalogo));
                     }
                     beneficiario.setListaProductos(productos);
 
@@ -296,68 +420,46 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
                 new es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Beneficiario[0]);
     }
 
-    private Producto[] obtenerProductos(final List<ProductoCobertura> productosCobertura, final DatosContratacionPlan oDatosPlan) {
+    private Producto[] obtenerProductos(final List<ProductoCobertura> productosCobertura, final CatalogoPlan catalogo) {
         final List<Producto> productos = new ArrayList<>();
         if (productosCobertura != null && !productosCobertura.isEmpty()) {
             for (final ProductoCobertura producto : productosCobertura) {
-                productos.add(obtenerProducto(producto, oDatosPlan));
+                productos.add(obtenerProducto(producto, catalogo));
             }
         }
 
         return productos.toArray(new Producto[0]);
     }
 
-    private Producto[] obtenerProductosAsegurado(final List<DatosProductoAlta> productosCobertura, final DatosContratacionPlan oDatosPlan) {
+    private Producto[] obtenerProductosAsegurado(final List<DatosProductoAlta> productosCobertura, final CatalogoPlan catalogo) {
         final List<Producto> productos = new ArrayList<>();
         if (productosCobertura != null && !productosCobertura.isEmpty()) {
             for (final DatosProductoAlta producto : productosCobertura) {
-                productos.add(obtenerProducto(producto, oDatosPlan));
+                productos.add(obtenerProducto(producto, catalogo));
             }
         }
 
         return productos.toArray(new Producto[0]);
     }
 
-    private Producto obtenerProducto(final DatosProductoAlta productoAlta, final DatosContratacionPlan oDatosPlan) {
+    private Producto obtenerProducto(final DatosProductoAlta productoAlta, final CatalogoPlan catalogo) {
         final Producto producto = new Producto();
         final int idProducto = productoAlta.getIdProducto();
         producto.setIdProducto(idProducto);
-        producto.setListaCoberturas(obtenerCoberturas(idProducto, oDatosPlan));
+        producto.setListaCoberturas(obtenerCoberturas(idProducto, catalogo));
         return producto;
     }
 
-    private Producto obtenerProducto(final ProductoCobertura productoCobertura, final DatosContratacionPlan oDatosPlan) {
+    private Producto obtenerProducto(final ProductoCobertura productoCobertura, final CatalogoPlan catalogo) {
         final Producto producto = new Producto();
         final int idProducto = productoCobertura.getIdProducto();
         producto.setIdProducto(idProducto);
-        producto.setListaCoberturas(obtenerCoberturas(idProducto, oDatosPlan));
+        producto.setListaCoberturas(obtenerCoberturas(idProducto, catalogo));
         return producto;
     }
 
-    private Cobertura[] obtenerCoberturas(final int idProducto, final DatosContratacionPlan oDatosPlan) {
-        final List<Cobertura> coberturas = new ArrayList<>();
-
-        final Iterator<DatosPlanProducto> iteradorProdsPlan = oDatosPlan.getProductos().iterator();
-        boolean found = false;
-        while (iteradorProdsPlan.hasNext() && !found) {
-            final DatosPlanProducto productoPlan = iteradorProdsPlan.next();
-            if (idProducto == productoPlan.getIdProducto()) {
-                found = true;
-                for (final DatosCobertura oDatosCobertura : productoPlan.getCoberturas()) {
-                    if (oDatosCobertura.isSwObligatorio()
-                            && oDatosCobertura.getCapitalMinimo() != null
-                            && oDatosCobertura.getCapitalMinimo() > 0) {
-                        final Cobertura cobertura = new Cobertura();
-                        cobertura
-                                .setCapital(Double.valueOf(oDatosCobertura.getCapitalMinimo()));
-                        cobertura.setIdCobertura(oDatosCobertura.getIdCobertura().intValue());
-                        coberturas.add(cobertura);
-                    }
-                }
-            }
-        }
-
-        return coberturas.toArray(new Cobertura[0]);
+    private Cobertura[] obtenerCoberturas(final int idProducto, final CatalogoPlan catalogo) {
+        return catalogo.getCoberturasObligatorias(idProducto);
     }
 
 
@@ -377,12 +479,7 @@ public class SimulacionCallable implements Callable<TarificacionPoliza> {
         }
 
         if (!fecha.contains("/")) {
-            final int edad = Integer.valueOf(fecha);
-            final Calendar dob = Calendar.getInstance();
-            dob.add(Calendar.YEAR, -edad);
-            dob.set(Calendar.DAY_OF_MONTH, 1);
-            final SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
-            convertida = sdf.format(dob.getTime());
+            convertida = FechasNacimiento.sistema().desdeEdad(Integer.parseInt(fecha));
         }
         return convertida;
     }
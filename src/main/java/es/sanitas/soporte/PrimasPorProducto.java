@@ -18,7 +18,10 @@ public class PrimasPorProducto implements Serializable {
     /** La constante serialVersionUID. */
     private static final long serialVersionUID = 1L;
 
-    private Primas primaProducto = new Primas();
+    /** Se crea al pedirla, con la prima numérica formateada si se ha indicado. */
+    private Primas primaProducto;
+    private double prima;
+    private boolean primaNumerica = false;
     private int codigoProducto = 0;
     private String nombreProducto = "";
     private String obligatorio = "";
@@ -27,6 +30,12 @@ public class PrimasPorProducto implements Serializable {
      * @return Returns the primaProducto.
      */
     public Primas getPrimaProducto() {
+        if( primaProducto == null ) {
+            primaProducto = new Primas();
+            if( primaNumerica ) {
+                primaProducto.setPrima( Double.toString( prima ) );
+            }
+        }
         return primaProducto;
     }
 
@@ -38,6 +47,28 @@ public class PrimasPorProducto implements Serializable {
         this.primaProducto = primaProducto;
     }
 
+    /**
+     * @return la prima numérica indicada con {@link #setPrima(double)}; 0 si no se ha indicado
+     */
+    public double getPrima() {
+        return prima;
+    }
+
+    /**
+     * Fija la prima sin convertirla a texto; el texto de {@link #getPrimaProducto()} se genera
+     * sólo si se consulta.
+     *
+     * @param prima
+     *            la prima del producto
+     */
+    public void setPrima( final double prima ) {
+        this.prima = prima;
+        this.primaNumerica = true;
+        if( primaProducto != null ) {
+            primaProducto.setPrima( Double.toString( prima ) );
+        }
+    }
+
     /**
      * @return Returns the codigoProducto.
      */
@@ -20,6 +20,9 @@ public class TarificacionPoliza implements Serializable {
     /** Código de error. */
     private String codigoError;
 
+    /** Frecuencia de pago tarificada. */
+    private FrecuenciaEnum frecuencia;
+
 
     /**
      * @return the tarificacion
@@ -53,5 +56,21 @@ public class TarificacionPoliza implements Serializable {
     }
 
 
+    /**
+     * @return the frecuencia
+     */
+    public FrecuenciaEnum getFrecuencia() {
+        return frecuencia;
+    }
+
+
+    /**
+     * @param frecuencia the frecuencia to set
+     */
+    public void setFrecuencia( final FrecuenciaEnum frecuencia ) {
+        this.frecuencia = frecuencia;
+    }
+
+
 
 }
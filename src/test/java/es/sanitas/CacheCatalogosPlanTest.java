@@ -0,0 +1,66 @@
+package es.sanitas;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CacheCatalogosPlanTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    public void mismaVersionReutilizaElIndice() {
+        final CacheCatalogosPlan cache = new CacheCatalogosPlan();
+
+        final CatalogoPlan primero = cache.obtener(1, plan("Producto"));
+        final CatalogoPlan segundo = cache.obtener(1, plan("Producto"));
+
+        assertSame(primero, segundo);
+        assertEquals(1, cache.getAciertos());
+        assertEquals(1, cache.getConstrucciones());
+    }
+
+    @Test
+    public void nuevaRevisionDelPlanReconstruyeElIndice() {
+        final CacheCatalogosPlan cache = new CacheCatalogosPlan();
+
+        final CatalogoPlan original = cache.obtener(1, plan("Producto"));
+        final CatalogoPlan revisado = cache.obtener(1, plan("Producto renombrado"));
+
+        assertNotSame(original, revisado);
+        assertEquals("Producto renombrado", revisado.getProducto(1).getDescComercial());
+        assertEquals(1, cache.getTamano());
+    }
+
+    @Test
+    public void invalidarYCapacidad() {
+        final CacheCatalogosPlan cache = new CacheCatalogosPlan(1);
+
+        final CatalogoPlan original = cache.obtener(1, plan("Producto"));
+        cache.invalidar(1);
+        assertNotSame(original, cache.obtener(1, plan("Producto")));
+
+        cache.obtener(2, plan("Producto"));
+        assertEquals(1, cache.getTamano());
+        assertEquals(1, cache.getExpulsiones());
+    }
+
+    private static DatosContratacionPlan plan(final String descripcion) {
+        final Map<String, Object> producto = new HashMap<>();
+        producto.put("idProducto", 1L);
+        producto.put("descComercial", descripcion);
+        producto.put("coberturas", Collections.emptyList());
+        return MAPPER.convertValue(Collections.singletonMap("productos", Collections.singletonList(producto)),
+                DatosContratacionPlan.class);
+    }
+}
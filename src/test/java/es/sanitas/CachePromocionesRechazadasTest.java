@@ -0,0 +1,48 @@
+package es.sanitas;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CachePromocionesRechazadasTest {
+
+    private static final long ID_PLAN = 1L;
+    private static final Long ID_MEDIADOR = 20L;
+
+    @Test
+    public void rechazoAcotadoAPlanYMediador() {
+        final CachePromocionesRechazadas cache = new CachePromocionesRechazadas();
+        cache.registrarRechazo(ID_PLAN, ID_MEDIADOR, "PROMO");
+
+        assertTrue(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, "PROMO"));
+        assertFalse(cache.estaRechazado(ID_PLAN + 1, ID_MEDIADOR, "PROMO"));
+        assertFalse(cache.estaRechazado(ID_PLAN, null, "PROMO"));
+        assertFalse(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, "OTRA"));
+        assertFalse(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, null));
+        assertEquals(1, cache.getEvitadas());
+    }
+
+    @Test
+    public void rechazoCaducado() throws InterruptedException {
+        final CachePromocionesRechazadas cache = new CachePromocionesRechazadas(10, 1);
+        cache.registrarRechazo(ID_PLAN, ID_MEDIADOR, "PROMO");
+        Thread.sleep(5);
+
+        assertFalse(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, "PROMO"));
+        assertEquals(0, cache.getTamano());
+        assertEquals(1, cache.getExpulsiones());
+    }
+
+    @Test
+    public void capacidadAcotada() {
+        final CachePromocionesRechazadas cache = new CachePromocionesRechazadas(1, 60000);
+        cache.registrarRechazo(ID_PLAN, ID_MEDIADOR, "PRIMERA");
+        cache.registrarRechazo(ID_PLAN, ID_MEDIADOR, "SEGUNDA");
+
+        assertEquals(1, cache.getTamano());
+        assertFalse(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, "PRIMERA"));
+        assertTrue(cache.estaRechazado(ID_PLAN, ID_MEDIADOR, "SEGUNDA"));
+    }
+}
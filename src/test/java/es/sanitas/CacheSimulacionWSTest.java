@@ -0,0 +1,48 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CacheSimulacionWSTest {
+
+    @Test
+    public void simulacionRepetidaSeSirveDesdeCache() {
+        final SimulacionWSFalso remoto = new SimulacionWSFalso();
+        final CacheSimulacionWS cache = new CacheSimulacionWS(remoto);
+
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+
+        assertEquals(1, remoto.getLlamadas());
+        assertEquals(1, cache.getAciertos());
+        assertEquals(1, cache.getFallos());
+    }
+
+    @Test
+    public void capacidadExcedidaExpulsaLaMenosUsada() {
+        final SimulacionWSFalso remoto = new SimulacionWSFalso();
+        final CacheSimulacionWS cache = new CacheSimulacionWS(remoto, 1, 60000);
+
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.INCLUSION_BENEFICIARIO));
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+
+        assertEquals(3, remoto.getLlamadas());
+        assertEquals(2, cache.getExpulsiones());
+        assertEquals(1, cache.getTamano());
+    }
+
+    @Test
+    public void entradaCaducadaProvocaNuevaLlamada() {
+        final SimulacionWSFalso remoto = new SimulacionWSFalso();
+        final CacheSimulacionWS cache = new CacheSimulacionWS(remoto, 10, 0);
+
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+        cache.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+
+        assertEquals(2, remoto.getLlamadas());
+        assertEquals(0, cache.getAciertos());
+    }
+}
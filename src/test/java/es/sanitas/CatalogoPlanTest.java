@@ -0,0 +1,77 @@
+package es.sanitas;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Cobertura;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class CatalogoPlanTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    public void indexaProductosYCoberturasObligatorias() {
+        final CatalogoPlan catalogo = CatalogoPlan.de(plan(
+                producto(1, "Primero", cobertura(10, true, 1000L), cobertura(11, false, 1000L),
+                        cobertura(12, true, 0L), cobertura(13, true, null)),
+                producto(2, "Segundo", cobertura(20, true, 500L))));
+
+        assertEquals(2, catalogo.getNumeroProductos());
+        assertEquals("Segundo", catalogo.getProducto(2).getDescComercial());
+        assertNull(catalogo.getProducto(3));
+
+        final Cobertura[] coberturas = catalogo.getCoberturasObligatorias(1);
+        assertEquals(1, coberturas.length);
+        assertEquals(Integer.valueOf(10), coberturas[0].getIdCobertura());
+        assertEquals(Double.valueOf(1000), coberturas[0].getCapital());
+        assertEquals(0, catalogo.getCoberturasObligatorias(3).length);
+    }
+
+    @Test
+    public void productoRepetidoConservaElPrimero() {
+        final CatalogoPlan catalogo = CatalogoPlan.de(plan(
+                producto(1, "Primero"), producto(1, "Repetido")));
+
+        assertEquals(1, catalogo.getNumeroProductos());
+        assertEquals("Primero", catalogo.getProducto(1).getDescComercial());
+    }
+
+    @Test
+    public void cadaLlamadaDevuelveUnaCopiaDeLaPlantilla() {
+        final CatalogoPlan catalogo = CatalogoPlan.de(plan(producto(1, "Primero", cobertura(10, true, 1000L))));
+
+        assertNotSame(catalogo.getCoberturasObligatorias(1), catalogo.getCoberturasObligatorias(1));
+    }
+
+    private static DatosContratacionPlan plan(final Map<?, ?>... productos) {
+        return MAPPER.convertValue(Collections.singletonMap("productos", Arrays.asList(productos)),
+                DatosContratacionPlan.class);
+    }
+
+    private static Map<String, Object> producto(final long id, final String descripcion, final Map<?, ?>... coberturas) {
+        final Map<String, Object> producto = new HashMap<>();
+        producto.put("idProducto", id);
+        producto.put("descComercial", descripcion);
+        producto.put("coberturas", Arrays.asList(coberturas));
+        return producto;
+    }
+
+    private static Map<String, Object> cobertura(final long id, final boolean obligatoria, final Long capitalMinimo) {
+        final Map<String, Object> cobertura = new HashMap<>();
+        cobertura.put("idCobertura", id);
+        cobertura.put("swObligatorio", obligatoria);
+        cobertura.put("capitalMinimo", capitalMinimo);
+        return cobertura;
+    }
+}
@@ -0,0 +1,104 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CircuitoSimulacionWSTest {
+
+    private static final Simulacion SIMULACION = SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA);
+
+    /** Servicio que falla mientras se le indique. */
+    private static final class ServicioInestable implements SimulacionWS {
+        private final SimulacionWSFalso correcto = new SimulacionWSFalso();
+        private volatile boolean caido = true;
+
+        @Override
+        public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+            if (caido) {
+                throw new IllegalStateException("Servicio caido");
+            }
+            return correcto.simular(in);
+        }
+    }
+
+    @Test
+    public void seAbreConFallosYSeCierraTrasLasPruebas() throws InterruptedException {
+        final ServicioInestable servicio = new ServicioInestable();
+        final CircuitoSimulacionWS circuito = new CircuitoSimulacionWS(servicio, 10, 4, 0.5, 1, 60000, 20, 2);
+        final List<String> transiciones = new ArrayList<>();
+        circuito.setObservador((anterior, nuevo) -> transiciones.add(anterior + ">" + nuevo));
+
+        for (int i = 0; i < 4; i++) {
+            llamarEsperandoFallo(circuito, IllegalStateException.class);
+        }
+        assertEquals(CircuitoSimulacionWS.Estado.ABIERTO, circuito.getEstado());
+
+        // Abierto: se rechaza sin llamar al servicio
+        llamarEsperandoFallo(circuito, CircuitoSimulacionWS.CircuitoAbierto.class);
+        assertEquals(1, circuito.getRechazadas());
+
+        servicio.caido = false;
+        Thread.sleep(30);
+        circuito.simular(SIMULACION);
+        assertEquals(CircuitoSimulacionWS.Estado.SEMIABIERTO, circuito.getEstado());
+        circuito.simular(SIMULACION);
+        assertEquals(CircuitoSimulacionWS.Estado.CERRADO, circuito.getEstado());
+
+        assertEquals(1, circuito.getAperturas());
+        assertEquals(1, circuito.getSemiaperturas());
+        assertEquals(1, circuito.getCierres());
+        assertEquals("[CERRADO>ABIERTO, ABIERTO>SEMIABIERTO, SEMIABIERTO>CERRADO]", transiciones.toString());
+    }
+
+    @Test
+    public void pruebaFallidaVuelveAAbrir() throws InterruptedException {
+        final ServicioInestable servicio = new ServicioInestable();
+        final CircuitoSimulacionWS circuito = new CircuitoSimulacionWS(servicio, 10, 2, 0.5, 1, 60000, 20, 1);
+        llamarEsperandoFallo(circuito, IllegalStateException.class);
+        llamarEsperandoFallo(circuito, IllegalStateException.class);
+
+        Thread.sleep(30);
+        llamarEsperandoFallo(circuito, IllegalStateException.class);
+
+        assertEquals(CircuitoSimulacionWS.Estado.ABIERTO, circuito.getEstado());
+        assertEquals(2, circuito.getAperturas());
+    }
+
+    @Test
+    public void seAbrePorLlamadasLentas() {
+        final CircuitoSimulacionWS circuito = new CircuitoSimulacionWS(new SimulacionWSFalso(5), 10, 2, 1, 0.5, 1, 60000, 1);
+        circuito.simular(SIMULACION);
+        circuito.simular(SIMULACION);
+
+        assertEquals(CircuitoSimulacionWS.Estado.ABIERTO, circuito.getEstado());
+    }
+
+    @Test
+    public void llamadasCorrectasNoAbren() {
+        final CircuitoSimulacionWS circuito = new CircuitoSimulacionWS(new SimulacionWSFalso(), 10, 2, 0.5, 1, 60000, 20, 1);
+        for (int i = 0; i < 10; i++) {
+            circuito.simular(SIMULACION);
+        }
+        assertEquals(CircuitoSimulacionWS.Estado.CERRADO, circuito.getEstado());
+    }
+
+    private static void llamarEsperandoFallo(final SimulacionWS servicio, final Class<? extends RuntimeException> tipo) {
+        try {
+            servicio.simular(SIMULACION);
+            fail("Se esperaba " + tipo.getSimpleName());
+        } catch (final RuntimeException e) {
+            assertEquals(tipo, e.getClass());
+        }
+    }
+}
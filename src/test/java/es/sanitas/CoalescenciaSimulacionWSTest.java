@@ -0,0 +1,105 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescenciaSimulacionWSTest {
+
+    private static final int HILOS = 4;
+
+    @Test
+    public void simulacionesConcurrentesIdenticasCompartenLlamada() throws Exception {
+        final SimulacionWSFalso remoto = new SimulacionWSFalso(300);
+        final CoalescenciaSimulacionWS coalescencia = new CoalescenciaSimulacionWS(remoto);
+        final ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        final CountDownLatch salida = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < HILOS; i++) {
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            salida.await();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        coalescencia.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+                    }
+                });
+            }
+            salida.countDown();
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, remoto.getLlamadas());
+        assertEquals(HILOS - 1, coalescencia.getAgrupadas());
+        assertEquals(0, coalescencia.getEnCurso());
+    }
+
+    @Test
+    public void interrupcionDelPrimeroNoAfectaALosQueEsperan() throws Exception {
+        final CountDownLatch primeraEnCurso = new CountDownLatch(1);
+        final AtomicInteger llamadas = new AtomicInteger();
+        final SimulacionWSFalso correcto = new SimulacionWSFalso();
+        // La primera llamada se bloquea hasta que interrumpen a su hilo; la segunda responde
+        final SimulacionWS remoto = new SimulacionWS() {
+            @Override
+            public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+                if (llamadas.incrementAndGet() == 1) {
+                    primeraEnCurso.countDown();
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Llamada interrumpida", e);
+                    }
+                }
+                return correcto.simular(in);
+            }
+        };
+        final CoalescenciaSimulacionWS coalescencia = new CoalescenciaSimulacionWS(remoto);
+        final Simulacion in = SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA);
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            final Future<RESTResponse<Tarificacion, Error>> primera = pool.submit(() -> coalescencia.simular(in));
+            assertTrue(primeraEnCurso.await(5, TimeUnit.SECONDS));
+            final Future<RESTResponse<Tarificacion, Error>> segunda = pool.submit(() -> coalescencia.simular(in));
+            while (coalescencia.getAgrupadas() == 0) {
+                Thread.sleep(5);
+            }
+
+            primera.cancel(true);
+            assertNotNull(segunda.get(5, TimeUnit.SECONDS).out);
+            assertEquals(2, llamadas.get());
+            try {
+                primera.get();
+                fail("La primera simulacion se ha cancelado");
+            } catch (final CancellationException e) {
+                // Esperado
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0, coalescencia.getEnCurso());
+    }
+}
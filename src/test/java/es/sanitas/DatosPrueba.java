@@ -0,0 +1,112 @@
+package es.sanitas;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.sanitas.bravo.ws.stubs.contratacionws.consultasoperaciones.DatosContratacionPlan;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.DatosAltaAsegurados;
+import es.sanitas.soporte.DatosAseguradoInclusion;
+import es.sanitas.soporte.StaticVarsContratacion;
+import wscontratacion.contratacion.fuentes.parametros.DatosDomicilio;
+import wscontratacion.contratacion.fuentes.parametros.DatosProductoAlta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Datos de alta, plan y tarificación mínimos para las pruebas: un titular con un producto.
+ * <p>
+ * Los objetos de los stubs se construyen a partir de mapas con Jackson, igual que los deserializa
+ * el cliente REST.
+ */
+final class DatosPrueba {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES, true);
+
+    static final int PRODUCTO = 1;
+    static final double IMPUESTOS = 0.6;
+    static final double DESCUENTO = -2.0;
+    static final double CSS = 0.15;
+
+    private DatosPrueba() {
+    }
+
+    /**
+     * @return alta de un titular con el producto {@value #PRODUCTO}
+     */
+    static DatosAltaAsegurados alta() {
+        final DatosAltaAsegurados alta = new DatosAltaAsegurados();
+        final List<DatosDomicilio> domicilios = new ArrayList<>();
+        domicilios.add(new DatosDomicilio());
+        alta.setDomicilios(domicilios);
+        final DatosAseguradoInclusion titular = MAPPER.convertValue(
+                Collections.singletonMap("datosPersonales", Collections.singletonMap("fNacimiento", "35")),
+                DatosAseguradoInclusion.class);
+        final List<DatosProductoAlta> contratados = new ArrayList<>();
+        contratados.add(MAPPER.convertValue(Collections.singletonMap("idProducto", PRODUCTO), DatosProductoAlta.class));
+        titular.setProductosContratados(contratados);
+        alta.setTitular(titular);
+        alta.setAsegurados(new ArrayList<DatosAseguradoInclusion>());
+        return alta;
+    }
+
+    /**
+     * @return plan con el producto {@value #PRODUCTO}, obligatorio y sin coberturas
+     */
+    static DatosContratacionPlan plan() {
+        final Map<String, Object> producto = new HashMap<>();
+        producto.put("idProducto", PRODUCTO);
+        producto.put("swObligatorio", true);
+        producto.put("descComercial", "Producto " + PRODUCTO);
+        producto.put("coberturas", Collections.emptyList());
+        return MAPPER.convertValue(
+                Collections.singletonMap("productos", Collections.singletonList(producto)), DatosContratacionPlan.class);
+    }
+
+    /**
+     * @return valores de sesión con el {@link #plan()} y sin excepciones
+     */
+    static Map<String, Object> valores() {
+        final Map<String, Object> hmValores = new HashMap<>();
+        hmValores.put(StaticVarsContratacion.DATOS_PLAN, plan());
+        hmValores.put(StaticVarsContratacion.LIST_EXCEPCIONES, new ArrayList<String>());
+        return hmValores;
+    }
+
+    /**
+     * @param prima prima del producto {@value #PRODUCTO}
+     * @return tarificación del titular con un recibo de importe prima + impuestos + descuento
+     */
+    static Tarificacion tarificacion(final double prima) {
+        final Map<String, Object> desglose = new HashMap<>();
+        desglose.put("prima", prima);
+        desglose.put("ISPrima", IMPUESTOS);
+        desglose.put("descuento", DESCUENTO);
+        desglose.put("css", CSS);
+        final Map<String, Object> tarifaProducto = new HashMap<>();
+        tarifaProducto.put("idProducto", (long) PRODUCTO);
+        tarifaProducto.put("descripcion", "Producto " + PRODUCTO);
+        tarifaProducto.put("tarifaDesglosada", desglose);
+        final Map<String, Object> tarifaBeneficiario = Collections.<String, Object>singletonMap(
+                "tarifasProductos", Collections.singletonList(tarifaProducto));
+
+        final Map<String, Object> recibos = new HashMap<>();
+        recibos.put("listaRecibosProductos", Collections.singletonList(
+                Collections.<String, Object>singletonMap("idProducto", (long) PRODUCTO)));
+        recibos.put("reciboPoliza", Collections.singletonMap("recibos", Collections.singletonList(
+                Collections.<String, Object>singletonMap("importe", prima + IMPUESTOS + DESCUENTO))));
+
+        final Map<String, Object> tarificacion = new LinkedHashMap<>();
+        tarificacion.put("tarifas", Collections.singletonMap("tarifaBeneficiarios", Collections.singletonList(tarifaBeneficiario)));
+        tarificacion.put("promociones", Collections.singletonMap("listaPromocionesPoliza", Collections.emptyList()));
+        tarificacion.put("recibos", recibos);
+        return MAPPER.convertValue(tarificacion, Tarificacion.class);
+    }
+}
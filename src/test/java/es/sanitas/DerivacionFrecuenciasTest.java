@@ -0,0 +1,113 @@
+package es.sanitas;
+
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.PrimasPorProducto;
+import es.sanitas.soporte.PromocionAplicada;
+import es.sanitas.soporte.Recibo;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DerivacionFrecuenciasTest {
+
+    private static final long ID_PLAN = 1L;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void frecuenciaDerivadaMultiplicaMesesPorFactor() {
+        final DerivacionFrecuencias derivacion = new DerivacionFrecuencias();
+        final Map<FrecuenciaEnum, Double> factores = new EnumMap<>(FrecuenciaEnum.class);
+        factores.put(FrecuenciaEnum.ANUAL, 0.95);
+        factores.put(FrecuenciaEnum.TRIMESTRAL, 1.0);
+        derivacion.setFactoresPorPlan(Collections.singletonMap(ID_PLAN, factores));
+
+        final ResultadoFrecuencia anual = derivacion.derivar(mensual(10.0), FrecuenciaEnum.ANUAL, ID_PLAN);
+        final ResultadoFrecuencia trimestral = derivacion.derivar(mensual(10.0), FrecuenciaEnum.TRIMESTRAL, ID_PLAN);
+
+        assertEquals(FrecuenciaEnum.ANUAL, anual.getFrecuencia());
+        assertEquals(10.0 * 12 * 0.95, anual.getDescuentoTotal(), DELTA);
+        assertEquals(100.0 * 12 * 0.95, anual.getPagoTotal(), DELTA);
+        assertEquals(10.0 * 3, trimestral.getDescuentoTotal(), DELTA);
+        assertEquals(Double.toString(10.0 * 3),
+                trimestral.getPrimasDesglosadas().get(0).get(0).getPrimaProducto().getPrima());
+        assertEquals(10.0 * 3, trimestral.getPrimasDesglosadas().get(0).get(0).getPrima(), DELTA);
+    }
+
+    @Test
+    public void frecuenciaDerivadaTieneSusPropiosRecibos() {
+        final Recibo recibo = new Recibo();
+        recibo.setFechaEmision(Calendar.getInstance());
+        recibo.setImporte(1000.0);
+        final ResultadoFrecuencia mensual = new ResultadoFrecuencia(FrecuenciaEnum.MENSUAL,
+                Collections.<List<PrimasPorProducto>>emptyList(), new double[0][],
+                Collections.<PromocionAplicada>emptyList(), Collections.singletonList(recibo), 0, 0, 50.0, null);
+
+        final DerivacionFrecuencias derivacion = derivacion(FrecuenciaEnum.ANUAL, 1.0);
+        final ResultadoFrecuencia anual = derivacion.derivar(mensual, FrecuenciaEnum.ANUAL, ID_PLAN);
+
+        assertEquals(1, anual.getRecibos().size());
+        final Recibo derivado = anual.getRecibos().get(0);
+        assertNotSame(recibo, derivado);
+        assertNotSame(recibo.getFechaEmision(), derivado.getFechaEmision());
+        assertEquals(recibo.getFechaEmision(), derivado.getFechaEmision());
+        assertEquals(1000.0, derivado.getImporte(), DELTA);
+        assertNull(derivacion.derivar(mensual(10.0), FrecuenciaEnum.ANUAL, ID_PLAN).getRecibos());
+    }
+
+    @Test
+    public void planMarcadoNoEsDerivable() {
+        final DerivacionFrecuencias derivacion = new DerivacionFrecuencias();
+        final Map<FrecuenciaEnum, Double> factores = Collections.singletonMap(FrecuenciaEnum.ANUAL, 0.95);
+        final Map<Long, Map<FrecuenciaEnum, Double>> factoresPorPlan = new HashMap<>();
+        factoresPorPlan.put(ID_PLAN, factores);
+        factoresPorPlan.put(ID_PLAN + 1, factores);
+        derivacion.setFactoresPorPlan(factoresPorPlan);
+        derivacion.setPlanesNoDerivables(Collections.singleton(ID_PLAN));
+
+        assertFalse(derivacion.esDerivable(ID_PLAN, FrecuenciaEnum.ANUAL));
+        assertTrue(derivacion.esDerivable(ID_PLAN + 1, FrecuenciaEnum.ANUAL));
+    }
+
+    @Test
+    public void sinFactorConfiguradoNoSeDeriva() {
+        final DerivacionFrecuencias derivacion = derivacion(FrecuenciaEnum.ANUAL, 0.95);
+
+        assertTrue(derivacion.esDerivable(ID_PLAN, FrecuenciaEnum.ANUAL));
+        assertFalse(derivacion.esDerivable(ID_PLAN, FrecuenciaEnum.SEMESTRAL));
+        assertFalse(derivacion.esDerivable(ID_PLAN, FrecuenciaEnum.MENSUAL));
+        assertFalse(derivacion.esDerivable(ID_PLAN + 1, FrecuenciaEnum.ANUAL));
+        assertNull(derivacion.getFactor(ID_PLAN, FrecuenciaEnum.SEMESTRAL));
+        try {
+            derivacion.derivar(mensual(10.0), FrecuenciaEnum.SEMESTRAL, ID_PLAN);
+            fail("Se esperaba IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            // La frecuencia se simula en remoto
+        }
+    }
+
+    private static DerivacionFrecuencias derivacion(final FrecuenciaEnum frecuencia, final double factor) {
+        final DerivacionFrecuencias derivacion = new DerivacionFrecuencias();
+        derivacion.setFactoresPorPlan(Collections.singletonMap(ID_PLAN, Collections.singletonMap(frecuencia, factor)));
+        return derivacion;
+    }
+
+    private static ResultadoFrecuencia mensual(final double descuento) {
+        final PrimasPorProducto prima = new PrimasPorProducto();
+        prima.setPrima(descuento);
+        final List<List<PrimasPorProducto>> primas = Collections.singletonList(Collections.singletonList(prima));
+        return new ResultadoFrecuencia(FrecuenciaEnum.MENSUAL, primas, new double[][]{{descuento}},
+                Collections.<PromocionAplicada>emptyList(), null, descuento, 100.0, null, null);
+    }
+}
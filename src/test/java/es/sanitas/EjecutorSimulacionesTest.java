@@ -0,0 +1,43 @@
+package es.sanitas;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EjecutorSimulacionesTest {
+
+    @Test
+    public void poolYColaLlenosRechazanYCuentan() throws Exception {
+        final EjecutorSimulaciones ejecutor = new EjecutorSimulaciones(1, 1, 1,
+                EjecutorSimulaciones.PoliticaRechazo.ABORTAR, "prueba");
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+        final Runnable bloqueada = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    bloqueo.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        try {
+            ejecutor.execute(bloqueada);
+            ejecutor.execute(bloqueada);
+            try {
+                ejecutor.execute(bloqueada);
+                fail("Se esperaba RejectedExecutionException");
+            } catch (final RejectedExecutionException e) {
+                assertEquals(1, ejecutor.getRechazadas());
+                assertEquals(1, ejecutor.getTareasEnCola());
+            }
+        } finally {
+            bloqueo.countDown();
+            ejecutor.destroy();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExcepcionesSetTest {
+
+    @Test
+    public void contieneLosMismosCodigosQueLaLista() {
+        final ExcepcionesSet excepciones = ExcepcionesSet.de(Arrays.asList(
+                StaticVarsContratacion.PROMO_FARMACIA, "1", "049", "OTRA"));
+
+        assertTrue(excepciones.contiene(StaticVarsContratacion.PROMO_FARMACIA));
+        assertTrue(excepciones.contiene(Integer.parseInt(StaticVarsContratacion.PROMO_FARMACIA)));
+        assertTrue(excepciones.contiene("1"));
+        assertTrue(excepciones.contiene("049"));
+        assertTrue(excepciones.contiene("OTRA"));
+        assertFalse(excepciones.contiene("49" + "0"));
+        assertFalse(excepciones.contiene("01"));
+        assertFalse(excepciones.contiene((String) null));
+        assertEquals(4, excepciones.getTamano());
+    }
+
+    @Test
+    public void losCodigosGrandesSeGuardanComoTexto() {
+        final ExcepcionesSet excepciones = ExcepcionesSet.de(Arrays.asList("999999999", "1024", "1023"));
+
+        assertTrue(excepciones.contiene("999999999"));
+        assertTrue(excepciones.contiene(999999999));
+        assertTrue(excepciones.contiene("1024"));
+        assertTrue(excepciones.contiene(1023));
+        assertFalse(excepciones.contiene(1025));
+        assertFalse(excepciones.contiene("99999999999"));
+        assertEquals(3, excepciones.getTamano());
+    }
+
+    @Test
+    public void listaNulaNoContieneNada() {
+        final ExcepcionesSet excepciones = ExcepcionesSet.de(null);
+
+        assertFalse(excepciones.contiene(StaticVarsContratacion.PROMO_ECI_COLECTIVOS));
+        assertEquals(0, excepciones.getTamano());
+    }
+}
@@ -0,0 +1,62 @@
+package es.sanitas;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertEquals;
+
+public class FechasNacimientoTest {
+
+    private static final ZoneId ZONA = ZoneOffset.UTC;
+
+    @Test
+    public void edadSeConvierteEnElDiaUnoDelMes() {
+        final FechasNacimiento fechas = new FechasNacimiento(reloj("2016-02-29T10:00:00Z"));
+
+        assertEquals("01/02/2016", fechas.desdeEdad(0));
+        assertEquals("01/02/1981", fechas.desdeEdad(35));
+        assertEquals("01/02/1896", fechas.desdeEdad(FechasNacimiento.EDAD_MAXIMA));
+        assertEquals("01/02/1866", fechas.desdeEdad(150));
+    }
+
+    @Test
+    public void laTablaSeRecalculaTrasMedianoche() {
+        final RelojAjustable reloj = new RelojAjustable(Instant.parse("2016-12-31T23:59:59Z"));
+        final FechasNacimiento fechas = new FechasNacimiento(reloj);
+        assertEquals("01/12/1986", fechas.desdeEdad(30));
+
+        reloj.instante = Instant.parse("2017-01-01T00:00:00Z");
+        assertEquals("01/01/1987", fechas.desdeEdad(30));
+    }
+
+    private static Clock reloj(final String instante) {
+        return Clock.fixed(Instant.parse(instante), ZONA);
+    }
+
+    private static final class RelojAjustable extends Clock {
+        private Instant instante;
+
+        private RelojAjustable(final Instant instante) {
+            this.instante = instante;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZONA;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instante;
+        }
+    }
+}
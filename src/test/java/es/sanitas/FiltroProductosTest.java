@@ -0,0 +1,31 @@
+package es.sanitas;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FiltroProductosTest {
+
+    private static final long[] PRODUCTOS = {1, FiltroProductos.PRODUCTO_ECI_COLECTIVOS, FiltroProductos.PRODUCTO_FARMACIA};
+
+    @Test
+    public void equivaleALaCondicionOriginal() {
+        final boolean[] valores = {false, true};
+        for (final boolean eci : valores) {
+            for (final boolean farmacia : valores) {
+                for (final boolean tarjetas : valores) {
+                    final FiltroProductos filtro = FiltroProductos.de(eci, farmacia, tarjetas);
+                    for (final long idProducto : PRODUCTOS) {
+                        assertEquals("producto " + idProducto + ", eci " + eci + ", farmacia " + farmacia + ", tarjetas " + tarjetas,
+                                condicionOriginal(idProducto, eci, farmacia, tarjetas), filtro.esTarificable(idProducto));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean condicionOriginal(final long idProducto, final boolean eci, final boolean farmacia,
+                                             final boolean tarjetas) {
+        return (idProducto != 389 || !eci || tarjetas) && idProducto != 670 || !farmacia || tarjetas;
+    }
+}
@@ -0,0 +1,124 @@
+package es.sanitas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LimitadorSimulacionesTest {
+
+    @Test
+    public void rechazaSinHuecoNiCola() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(1, 1, 1, 1000, 0, 1000);
+        final LimitadorSimulaciones.Permiso permiso = limitador.adquirir(null);
+
+        try {
+            limitador.adquirir(null);
+            fail("Se esperaba ExcepcionServicioNoDisponible");
+        } catch (final ExcepcionServicioNoDisponible e) {
+            assertEquals(1, limitador.getRechazadas());
+        }
+        permiso.liberar(true);
+        limitador.adquirir(null).liberar(true);
+        assertEquals(0, limitador.getEnCurso());
+    }
+
+    @Test
+    public void esperaEnColaHastaElPlazo() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(1, 1, 1, 1000, 10, 60000);
+        limitador.adquirir(null);
+
+        final long inicio = System.nanoTime();
+        try {
+            limitador.adquirir(Plazo.dentroDe(50, TimeUnit.MILLISECONDS));
+            fail("Se esperaba ExcepcionServicioNoDisponible");
+        } catch (final ExcepcionServicioNoDisponible e) {
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) >= 40);
+            assertEquals(0, limitador.getEnCola());
+        }
+    }
+
+    @Test
+    public void huecoLiberadoDespiertaALaCola() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(1, 1, 1, 1000, 10, 60000);
+        final LimitadorSimulaciones.Permiso permiso = limitador.adquirir(null);
+        final Thread liberador = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            permiso.liberar(true);
+        });
+        liberador.start();
+
+        limitador.adquirir(Plazo.dentroDe(5, TimeUnit.SECONDS)).liberar(true);
+        liberador.join();
+        assertEquals(0, limitador.getRechazadas());
+    }
+
+    @Test
+    public void limiteAIMD() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(10, 2, 20, 1000, 0, 0);
+
+        // Fallos: reducción multiplicativa hasta el mínimo
+        for (int i = 0; i < 50; i++) {
+            limitador.adquirir(null).liberar(false);
+        }
+        assertEquals(2, limitador.getLimite());
+
+        // Rondas de llamadas correctas con el límite en uso: sube hasta el máximo
+        for (int ronda = 0; ronda < 100; ronda++) {
+            final List<LimitadorSimulaciones.Permiso> permisos = new ArrayList<>();
+            for (int i = limitador.getLimite(); i > 0; i--) {
+                permisos.add(limitador.adquirir(null));
+            }
+            for (final LimitadorSimulaciones.Permiso permiso : permisos) {
+                permiso.liberar(true);
+            }
+        }
+        assertEquals(20, limitador.getLimite());
+
+        // Con poca carga no sube
+        final LimitadorSimulaciones ocioso = new LimitadorSimulaciones(10, 2, 20, 1000, 0, 0);
+        for (int i = 0; i < 1000; i++) {
+            ocioso.adquirir(null).liberar(true);
+        }
+        assertEquals(10, ocioso.getLimite());
+    }
+
+    @Test
+    public void unaReduccionPorTandaDeLlamadas() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(10, 1, 20, 1000, 0, 0);
+        final List<LimitadorSimulaciones.Permiso> permisos = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            permisos.add(limitador.adquirir(null));
+        }
+        // Fallan todas a la vez: sólo la primera reduce el límite
+        for (final LimitadorSimulaciones.Permiso permiso : permisos) {
+            permiso.liberar(false);
+        }
+        assertEquals(9, limitador.getLimite());
+        assertEquals(1, limitador.getReducciones());
+
+        // Una llamada que empieza después de la reducción sí vuelve a reducirlo
+        limitador.adquirir(null).liberar(false);
+        assertEquals(8, limitador.getLimite());
+        assertEquals(2, limitador.getReducciones());
+    }
+
+    @Test
+    public void descartarNoAjustaElLimite() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(5, 1, 10, 1000, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            limitador.adquirir(null).descartar();
+        }
+        assertEquals(5, limitador.getLimite());
+        assertEquals(0, limitador.getReducciones());
+    }
+}
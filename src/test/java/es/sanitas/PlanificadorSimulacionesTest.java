@@ -0,0 +1,168 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlanificadorSimulacionesTest {
+
+    private static final int ALTA = StaticVarsContratacion.ALTA_POLIZA;
+    private static final int INCLUSION = StaticVarsContratacion.INCLUSION_BENEFICIARIO;
+
+    private PlanificadorSimulaciones planificador;
+
+    @After
+    public void apagar() throws InterruptedException {
+        if (planificador != null) {
+            planificador.destroy();
+        }
+    }
+
+    @Test
+    public void atiendePrimeroLaPrioridadMasAlta() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(1, "prueba");
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+        final List<String> orden = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminadas = new CountDownLatch(4);
+
+        // Ocupa el único hilo mientras se encolan el resto
+        final CountDownLatch ocupado = new CountDownLatch(1);
+        planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.INTERACTIVA).execute(() -> {
+            ocupado.countDown();
+            esperar(bloqueo);
+        });
+        assertTrue(ocupado.await(5, TimeUnit.SECONDS));
+        encolar(PlanificadorSimulaciones.Prioridad.LOTE, "lote", orden, terminadas);
+        encolar(PlanificadorSimulaciones.Prioridad.MEDIADOR, "mediador", orden, terminadas);
+        encolar(PlanificadorSimulaciones.Prioridad.INTERACTIVA, "interactiva", orden, terminadas);
+        encolar(PlanificadorSimulaciones.Prioridad.LOTE, "lote2", orden, terminadas);
+        bloqueo.countDown();
+
+        assertTrue(terminadas.await(5, TimeUnit.SECONDS));
+        assertEquals("[interactiva, mediador, lote, lote2]", orden.toString());
+    }
+
+    @Test
+    public void limitePorOperacion() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(4, "prueba");
+        planificador.setConcurrenciaPorOperacion(Collections.singletonMap(INCLUSION, 1));
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+        final Executor inclusiones = planificador.ejecutor(INCLUSION, PlanificadorSimulaciones.Prioridad.INTERACTIVA);
+
+        inclusiones.execute(() -> esperar(bloqueo));
+        inclusiones.execute(() -> esperar(bloqueo));
+        // La segunda inclusión espera, pero las altas siguen teniendo hilos
+        final CountDownLatch alta = new CountDownLatch(1);
+        planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.INTERACTIVA).execute(alta::countDown);
+
+        assertTrue(alta.await(5, TimeUnit.SECONDS));
+        assertEquals(1, planificador.getEnCola(PlanificadorSimulaciones.Prioridad.INTERACTIVA));
+        bloqueo.countDown();
+    }
+
+    @Test
+    public void limitePorPrioridadYColaAcotada() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(4, "prueba");
+        planificador.setConcurrenciaPorPrioridad(Collections.singletonMap(PlanificadorSimulaciones.Prioridad.LOTE, 1));
+        planificador.setColaPorPrioridad(Collections.singletonMap(PlanificadorSimulaciones.Prioridad.LOTE, 1));
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+        final Executor lotes = planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.LOTE);
+
+        final CountDownLatch enCurso = new CountDownLatch(1);
+        lotes.execute(() -> {
+            enCurso.countDown();
+            esperar(bloqueo);
+        });
+        assertTrue(enCurso.await(5, TimeUnit.SECONDS));
+        lotes.execute(() -> esperar(bloqueo));
+        try {
+            lotes.execute(() -> esperar(bloqueo));
+            fail("Se esperaba RejectedExecutionException");
+        } catch (final RejectedExecutionException e) {
+            assertEquals(1, planificador.getRechazadas(PlanificadorSimulaciones.Prioridad.LOTE));
+        }
+        assertEquals(1, planificador.getEnCurso(PlanificadorSimulaciones.Prioridad.LOTE));
+        bloqueo.countDown();
+    }
+
+    @Test
+    public void porDefectoLosMediadoresDejanHilosParaLasAltasInteractivas() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(4, "prueba");
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+
+        ocuparPool(planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.MEDIADOR), bloqueo);
+
+        assertEquals(2, planificador.getEnCurso(PlanificadorSimulaciones.Prioridad.MEDIADOR));
+        assertEquals(2, planificador.getEnCola(PlanificadorSimulaciones.Prioridad.MEDIADOR));
+        bloqueo.countDown();
+    }
+
+    @Test
+    public void porDefectoLasInclusionesDejanHilosParaLasAltas() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(4, "prueba");
+        final CountDownLatch bloqueo = new CountDownLatch(1);
+
+        ocuparPool(planificador.ejecutor(INCLUSION, PlanificadorSimulaciones.Prioridad.INTERACTIVA), bloqueo);
+
+        assertEquals(2, planificador.getEnCola(PlanificadorSimulaciones.Prioridad.INTERACTIVA));
+        bloqueo.countDown();
+    }
+
+    @Test
+    public void laCancelacionNoMataElHilo() throws InterruptedException {
+        planificador = new PlanificadorSimulaciones(1, "prueba");
+        final Executor ejecutor = planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.INTERACTIVA);
+        ejecutor.execute(() -> Thread.currentThread().interrupt());
+
+        final CountDownLatch siguiente = new CountDownLatch(1);
+        ejecutor.execute(siguiente::countDown);
+        assertTrue(siguiente.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Envía tantas tareas bloqueadas como hilos tiene el pool y comprueba que, aun así, una alta
+     * interactiva se ejecuta sin esperar a que terminen.
+     */
+    private void ocuparPool(final Executor ejecutor, final CountDownLatch bloqueo) throws InterruptedException {
+        final CountDownLatch iniciadas = new CountDownLatch(2);
+        for (int i = 0; i < 4; i++) {
+            ejecutor.execute(() -> {
+                iniciadas.countDown();
+                esperar(bloqueo);
+            });
+        }
+        assertTrue(iniciadas.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch alta = new CountDownLatch(1);
+        planificador.ejecutor(ALTA, PlanificadorSimulaciones.Prioridad.INTERACTIVA).execute(alta::countDown);
+        assertTrue(alta.await(5, TimeUnit.SECONDS));
+    }
+
+    private void encolar(final PlanificadorSimulaciones.Prioridad prioridad, final String nombre,
+                         final List<String> orden, final CountDownLatch terminadas) {
+        planificador.ejecutor(ALTA, prioridad).execute(() -> {
+            orden.add(nombre);
+            terminadas.countDown();
+        });
+    }
+
+    private static void esperar(final CountDownLatch bloqueo) {
+        try {
+            bloqueo.await(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
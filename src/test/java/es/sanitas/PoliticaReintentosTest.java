@@ -0,0 +1,81 @@
+package es.sanitas;
+
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PoliticaReintentosTest {
+
+    @Test
+    public void clasificacionDeCodigos() {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setCodigosTransitorios(Collections.singleton("-500"));
+
+        assertEquals(PoliticaReintentos.TipoReintento.SIN_PROMOCION,
+                politica.clasificar(StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL));
+        assertEquals(PoliticaReintentos.TipoReintento.TRANSITORIO, politica.clasificar("-500"));
+        assertEquals(PoliticaReintentos.TipoReintento.NINGUNO, politica.clasificar("-1"));
+        assertEquals(PoliticaReintentos.TipoReintento.NINGUNO, politica.clasificar(null));
+    }
+
+    @Test
+    public void maximoDeIntentos() {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setMaxIntentos(3);
+        politica.setEsperas(0, 0);
+
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, null));
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 2, null));
+        assertEquals(-1, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 3, null));
+        assertEquals(-1, politica.reintentar(PoliticaReintentos.TipoReintento.NINGUNO, 1, null));
+        // La repetición sin código promocional no está sujeta al máximo
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.SIN_PROMOCION, 3, null));
+        assertEquals(3, politica.getReintentos());
+    }
+
+    @Test
+    public void esperaAcotada() {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setMaxIntentos(10);
+        politica.setEsperas(10, 40);
+
+        for (int intentos = 1; intentos < 10; intentos++) {
+            final long espera = politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, intentos, null);
+            assertTrue(espera >= 0 && espera <= Math.min(40, 10L << (intentos - 1)));
+        }
+    }
+
+    @Test
+    public void sinReintentoSiNoQuedaPlazo() {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setEsperas(1000, 1000);
+        final Plazo plazo = Plazo.dentroDe(0, TimeUnit.MILLISECONDS);
+
+        assertEquals(-1, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, plazo));
+        assertEquals(-1, politica.reintentar(PoliticaReintentos.TipoReintento.SIN_PROMOCION, 1, plazo));
+    }
+
+    @Test
+    public void presupuestoCompartido() {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setPresupuesto(0.5, 2);
+        politica.setEsperas(0, 0);
+
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, null));
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, null));
+        assertEquals(-1, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, null));
+        assertEquals(1, politica.getDenegados());
+        // Sin presupuesto se sigue repitiendo sin el código promocional
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.SIN_PROMOCION, 1, null));
+
+        // Dos simulaciones nuevas aportan un reintento
+        politica.registrarSimulacion();
+        politica.registrarSimulacion();
+        assertEquals(0, politica.reintentar(PoliticaReintentos.TipoReintento.TRANSITORIO, 1, null));
+    }
+}
@@ -1,21 +1,265 @@
 package es.sanitas;
 
+import es.sanitas.soporte.ExcepcionContratacion;
+import es.sanitas.soporte.FrecuenciaEnum;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
-import junit.framework.TestCase;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
-/**
- * Unit test for simple App.
- */
-public class RealizarSimulacionTest extends TestCase {
+public class RealizarSimulacionTest {
+
+    private static final long LENTA = TimeUnit.SECONDS.toMillis(5);
+    private static final double DELTA = 1e-9;
+
+    private RealizarSimulacion simulacion;
+    private SimulacionWSFalso servicio;
+
+    @Before
+    public void preparar() {
+        servicio = new SimulacionWSFalso();
+        for (final FrecuenciaEnum frecuencia : FrecuenciaEnum.values()) {
+            servicio.responder(frecuencia, DatosPrueba.tarificacion(10 * frecuencia.getValor()));
+        }
+        simulacion = new RealizarSimulacion();
+        simulacion.setServicioSimulacion(servicio);
+    }
+
+    @After
+    public void apagar() throws Exception {
+        simulacion.destroy();
+    }
+
+    @Test
+    public void elPlazoDescartaLasFrecuenciasLentas() throws Exception {
+        simulacion.setTimeoutMillis(200);
+        servicio.esperar(FrecuenciaEnum.SEMESTRAL, LENTA).esperar(FrecuenciaEnum.ANUAL, LENTA);
+
+        final long inicio = System.nanoTime();
+        final ResultadoSimulacion resultado = simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false,
+                DatosPrueba.valores(), null);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) < LENTA / 2);
+        assertEquals(EnumSet.of(FrecuenciaEnum.MENSUAL, FrecuenciaEnum.TRIMESTRAL), resultado.getResultados().keySet());
+        esperarInterrupciones(2);
+    }
+
+    @Test
+    public void sinNingunaFrecuenciaATiempoFalla() throws Exception {
+        simulacion.setTimeoutMillis(100);
+        for (final FrecuenciaEnum frecuencia : FrecuenciaEnum.values()) {
+            servicio.esperar(frecuencia, LENTA);
+        }
+
+        try {
+            simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false, DatosPrueba.valores(), null);
+            fail("Se esperaba ExcepcionContratacion");
+        } catch (final ExcepcionContratacion e) {
+            esperarInterrupciones(4);
+        }
+    }
+
+    @Test
+    public void unErrorDefinitivoCancelaElRestoDeFrecuencias() throws Exception {
+        simulacion.setCancelacionTemprana(true);
+        servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.TRIMESTRAL, "-1");
+        simulacion.setServicioSimulacion(servicio);
+        servicio.esperar(FrecuenciaEnum.MENSUAL, LENTA).esperar(FrecuenciaEnum.SEMESTRAL, LENTA)
+                .esperar(FrecuenciaEnum.ANUAL, LENTA);
+
+        final long inicio = System.nanoTime();
+        try {
+            simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false, DatosPrueba.valores(), null);
+            fail("Se esperaba ExcepcionSimulacionRechazada");
+        } catch (final ExcepcionSimulacionRechazada e) {
+            assertEquals("Error -1 en frecuencia TRIMESTRAL", e.getMessage());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) < LENTA / 2);
+            esperarInterrupciones(3);
+        }
+    }
+
+    @Test
+    public void unErrorTransitorioNoCancelaElRestoDeFrecuencias() throws Exception {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setMaxIntentos(1);
+        politica.setCodigosTransitorios(Collections.singleton("-500"));
+        simulacion.setPoliticaReintentos(politica);
+        simulacion.setCancelacionTemprana(true);
+        servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.TRIMESTRAL, "-500");
+        for (final FrecuenciaEnum frecuencia : EnumSet.of(FrecuenciaEnum.MENSUAL, FrecuenciaEnum.SEMESTRAL, FrecuenciaEnum.ANUAL)) {
+            servicio.responder(frecuencia, DatosPrueba.tarificacion(10 * frecuencia.getValor()));
+        }
+        simulacion.setServicioSimulacion(servicio);
+        servicio.esperar(FrecuenciaEnum.MENSUAL, 300).esperar(FrecuenciaEnum.SEMESTRAL, 300)
+                .esperar(FrecuenciaEnum.ANUAL, 300);
+
+        final long inicio = System.nanoTime();
+        try {
+            simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false, DatosPrueba.valores(), null);
+            fail("Se esperaba ExcepcionContratacion");
+        } catch (final ExcepcionContratacion e) {
+            // Se espera al resto de frecuencias sin interrumpirlas
+            assertFalse(e instanceof ExcepcionSimulacionRechazada);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) >= 300);
+            assertEquals(0, servicio.getInterrumpidas());
+        }
+    }
+
+    @Test
+    public void laVersionAsincronaNoBloquea() throws Exception {
+        for (final FrecuenciaEnum frecuencia : FrecuenciaEnum.values()) {
+            servicio.esperar(frecuencia, 200);
+        }
+
+        final CompletableFuture<ResultadoSimulacion> futuro = simulacion.calcularSimulacionAsync(DatosPrueba.alta(),
+                null, null, false, DatosPrueba.valores(), null);
+
+        assertFalse(futuro.isDone());
+        assertEquals(EnumSet.allOf(FrecuenciaEnum.class), futuro.get(5, TimeUnit.SECONDS).getResultados().keySet());
+    }
+
+    @Test
+    public void elPlazoAsincronoNoCompletaEnElHiloVigilante() throws Exception {
+        simulacion.setTimeoutMillis(200);
+        servicio.esperar(FrecuenciaEnum.ANUAL, LENTA);
+
+        final CompletableFuture<String> hilo = simulacion.calcularSimulacionAsync(DatosPrueba.alta(), null, null,
+                false, DatosPrueba.valores(), null).thenApply(resultado -> {
+                    assertEquals(EnumSet.complementOf(EnumSet.of(FrecuenciaEnum.ANUAL)),
+                            resultado.getResultados().keySet());
+                    return Thread.currentThread().getName();
+                });
+
+        // La última frecuencia en terminar es la que vence, y con ella se completa el resultado
+        assertFalse(hilo.get(LENTA / 2, TimeUnit.MILLISECONDS).startsWith("simulacion-plazos"));
+        esperarInterrupciones(1);
+    }
+
+    @Test
+    public void laVersionAsincronaFallaConElRechazoDelServicio() throws Exception {
+        simulacion.setCancelacionTemprana(true);
+        servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.ANUAL, "-1");
+        simulacion.setServicioSimulacion(servicio);
+        servicio.esperar(FrecuenciaEnum.MENSUAL, LENTA).esperar(FrecuenciaEnum.TRIMESTRAL, LENTA)
+                .esperar(FrecuenciaEnum.SEMESTRAL, LENTA);
+
+        final CompletableFuture<Map<String, Object>> futuro = simulacion.realizarSimulacionAsync(DatosPrueba.alta(),
+                null, null, false, DatosPrueba.valores());
+        try {
+            futuro.get(LENTA / 2, TimeUnit.MILLISECONDS);
+            fail("Se esperaba ExcepcionSimulacionRechazada");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ExcepcionSimulacionRechazada);
+            assertEquals("Error -1 en frecuencia ANUAL", e.getCause().getMessage());
+            esperarInterrupciones(3);
+        }
+    }
 
-    /**
-     * Rigourous Test :-)
-     */
     @Test
-    public void testApp() {
-        assertTrue( true );
+    public void laVersionAsincronaConservaElServicioNoDisponible() throws Exception {
+        simulacion.setServicioSimulacion(in -> {
+            throw new CircuitoSimulacionWS.CircuitoAbierto("Circuito abierto");
+        });
+
+        final CompletableFuture<ResultadoSimulacion> futuro = simulacion.calcularSimulacionAsync(DatosPrueba.alta(),
+                null, null, false, DatosPrueba.valores(), null);
+        try {
+            futuro.get(LENTA / 2, TimeUnit.MILLISECONDS);
+            fail("Se esperaba ExcepcionServicioNoDisponible");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ExcepcionServicioNoDisponible);
+            assertEquals("Circuito abierto", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void elReceptorRecibeCadaFrecuenciaSegunTermina() throws Exception {
+        servicio.esperar(FrecuenciaEnum.MENSUAL, 100).esperar(FrecuenciaEnum.TRIMESTRAL, 300)
+                .esperar(FrecuenciaEnum.SEMESTRAL, 200);
+        final List<FrecuenciaEnum> recibidas = new CopyOnWriteArrayList<>();
+
+        simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false, DatosPrueba.valores(),
+                (frecuencia, resultado) -> {
+                    assertEquals(frecuencia, resultado.getFrecuencia());
+                    recibidas.add(frecuencia);
+                });
+
+        assertEquals(Arrays.asList(FrecuenciaEnum.ANUAL, FrecuenciaEnum.MENSUAL, FrecuenciaEnum.SEMESTRAL,
+                FrecuenciaEnum.TRIMESTRAL), recibidas);
     }
 
+    @Test
+    public void unFalloDelReceptorNoAfectaALaSimulacion() throws Exception {
+        final ResultadoSimulacion resultado = simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false,
+                DatosPrueba.valores(), (frecuencia, parcial) -> {
+                    throw new IllegalStateException("receptor roto");
+                });
+
+        assertEquals(EnumSet.allOf(FrecuenciaEnum.class), resultado.getResultados().keySet());
+    }
+
+    @Test
+    public void totalesDeCadaFrecuencia() throws Exception {
+        simulacion.setTimeoutMillis(500);
+        servicio.esperar(FrecuenciaEnum.TRIMESTRAL, LENTA);
+
+        final ResultadoSimulacion resultado = simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false,
+                DatosPrueba.valores(), null);
+
+        for (final FrecuenciaEnum frecuencia : EnumSet.of(FrecuenciaEnum.MENSUAL, FrecuenciaEnum.SEMESTRAL, FrecuenciaEnum.ANUAL)) {
+            final double pago = 10 * frecuencia.getValor() + DatosPrueba.IMPUESTOS + DatosPrueba.DESCUENTO;
+            assertEquals(pago, resultado.getPagoTotal(frecuencia), DELTA);
+            assertEquals(DatosPrueba.DESCUENTO, resultado.getDescuentoTotal(frecuencia), DELTA);
+            assertEquals(pago - DatosPrueba.CSS, resultado.getPrecioConPromocion(frecuencia), DELTA);
+            assertEquals(RealizarSimulacion.primaFrecuencia(frecuencia, DatosPrueba.DESCUENTO),
+                    resultado.getResultado(frecuencia).getPrimas()[0][0], DELTA);
+        }
+        // La frecuencia que no llega a tiempo queda a cero y no pisa las demás
+        assertEquals(0, resultado.getPagoTotal(FrecuenciaEnum.TRIMESTRAL), DELTA);
+        assertNull(resultado.getResultado(FrecuenciaEnum.TRIMESTRAL));
+    }
+
+    @Test
+    public void sinFactorConfiguradoLaFrecuenciaSeSimulaEnRemoto() throws Exception {
+        final DerivacionFrecuencias derivacion = new DerivacionFrecuencias();
+        derivacion.setFactoresPorPlan(Collections.singletonMap((long) DatosPrueba.alta().getIdPlan(),
+                Collections.singletonMap(FrecuenciaEnum.ANUAL, 0.9)));
+        simulacion.setDerivacionFrecuencias(derivacion);
+
+        final ResultadoSimulacion resultado = simulacion.calcularSimulacion(DatosPrueba.alta(), null, null, false,
+                DatosPrueba.valores(), null);
+
+        // Sólo la anual se deriva de la mensual; trimestral y semestral mantienen su propia tarificación
+        assertEquals(3, servicio.getLlamadas());
+        final double mensual = 10 + DatosPrueba.IMPUESTOS + DatosPrueba.DESCUENTO;
+        assertEquals(mensual * 12 * 0.9, resultado.getPagoTotal(FrecuenciaEnum.ANUAL), DELTA);
+        assertEquals(20 + DatosPrueba.IMPUESTOS + DatosPrueba.DESCUENTO,
+                resultado.getPagoTotal(FrecuenciaEnum.TRIMESTRAL), DELTA);
+    }
+
+    /**
+     * Las llamadas cuyo resultado ya no se lee se cancelan interrumpiendo su hilo.
+     */
+    private void esperarInterrupciones(final int esperadas) throws InterruptedException {
+        final long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (servicio.getInterrumpidas() < esperadas && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(esperadas, servicio.getInterrumpidas());
+    }
 }
@@ -0,0 +1,127 @@
+package es.sanitas;
+
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+import es.sanitas.soporte.StaticVarsContratacion;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class RespaldoSimulacionWSTest {
+
+    private static final Simulacion SIMULACION = SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA);
+
+    private RespaldoSimulacionWS respaldo;
+
+    /** La primera llamada se queda bloqueada hasta que la interrumpen; el resto responde al momento. */
+    private static final class PrimeraLenta implements SimulacionWS {
+        private final SimulacionWSFalso rapido = new SimulacionWSFalso();
+        private final AtomicInteger llamadas = new AtomicInteger();
+        private final CountDownLatch interrumpida = new CountDownLatch(1);
+
+        @Override
+        public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+            if (llamadas.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (final InterruptedException e) {
+                    interrumpida.countDown();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return rapido.simular(in);
+        }
+    }
+
+    @After
+    public void apagar() throws InterruptedException {
+        if (respaldo != null) {
+            respaldo.destroy();
+        }
+    }
+
+    @Test
+    public void respaldoGanaYSeCancelaLaOriginal() throws InterruptedException {
+        final PrimeraLenta servicio = new PrimeraLenta();
+        respaldo = new RespaldoSimulacionWS(servicio, null, 0.95, 20);
+
+        final long inicio = System.nanoTime();
+        assertNotNull(respaldo.simular(SIMULACION).out);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) < 5000);
+        assertEquals(1, respaldo.getRespaldos());
+        assertEquals(1, respaldo.getGanados());
+        assertTrue(servicio.interrumpida.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void sinRespaldoSiLaRespuestaLlegaAntes() {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso();
+        respaldo = new RespaldoSimulacionWS(servicio, null, 0.95, 5000);
+
+        for (int i = 0; i < 5; i++) {
+            respaldo.simular(SIMULACION);
+        }
+        assertEquals(5, servicio.getLlamadas());
+        assertEquals(0, respaldo.getRespaldos());
+    }
+
+    @Test
+    public void sinRespaldoSinPresupuesto() {
+        final PrimeraLenta servicio = new PrimeraLenta();
+        respaldo = new RespaldoSimulacionWS(servicio, null, 0.95, 10);
+        respaldo.setPresupuesto(0, 0);
+
+        Plazo.establecer(Plazo.dentroDe(100, TimeUnit.MILLISECONDS));
+        try {
+            respaldo.simular(SIMULACION);
+        } catch (final IllegalStateException e) {
+            // Sin respaldo la llamada lenta agota el plazo
+        } finally {
+            Plazo.limpiar();
+        }
+        assertEquals(0, respaldo.getRespaldos());
+        assertEquals(1, respaldo.getDenegados());
+    }
+
+    @Test
+    public void lasOriginalesCanceladasCuentanParaElPercentil() {
+        // La llamada original de cada simulación siempre pierde frente al respaldo
+        final Set<Simulacion> originales = Collections.newSetFromMap(new ConcurrentHashMap<Simulacion, Boolean>());
+        final SimulacionWSFalso rapido = new SimulacionWSFalso();
+        final SimulacionWSFalso lento = new SimulacionWSFalso(TimeUnit.SECONDS.toMillis(5));
+        respaldo = new RespaldoSimulacionWS(in -> originales.add(in) ? lento.simular(in) : rapido.simular(in),
+                null, 0.5, 20);
+        respaldo.setPresupuesto(1, 100);
+
+        for (int i = 0; i < 64; i++) {
+            respaldo.simular(SimulacionWSFalso.simulacion(StaticVarsContratacion.ALTA_POLIZA));
+        }
+        // Con sólo las latencias de los respaldos el retraso caería a casi cero
+        assertEquals(64, respaldo.getGanados());
+        assertTrue(respaldo.getRetrasoMillis() >= 20);
+    }
+
+    @Test
+    public void retrasoSegunPercentil() {
+        respaldo = new RespaldoSimulacionWS(new SimulacionWSFalso(), null, 0.5, 5000);
+
+        for (int i = 0; i < 64; i++) {
+            respaldo.simular(SIMULACION);
+        }
+        assertTrue(respaldo.getRetrasoMillis() < 5000);
+    }
+}
@@ -0,0 +1,75 @@
+package es.sanitas;
+
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.PrimasPorProducto;
+import es.sanitas.soporte.PromocionAplicada;
+import es.sanitas.soporte.Recibo;
+import es.sanitas.soporte.StaticVarsContratacion;
+import es.sanitas.soporte.TipoPromocionEnum;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultadoSimulacionTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void totalesPorFrecuenciaYMapaLegado() {
+        final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados = new EnumMap<>(FrecuenciaEnum.class);
+        resultados.put(FrecuenciaEnum.MENSUAL, resultado(FrecuenciaEnum.MENSUAL, 10.0, 40.0, null));
+        resultados.put(FrecuenciaEnum.ANUAL, resultado(FrecuenciaEnum.ANUAL, 120.0, 480.0, null));
+
+        final ResultadoSimulacion simulacion = new ResultadoSimulacion(resultados, true);
+
+        assertEquals(40.0, simulacion.getPagoTotal(FrecuenciaEnum.MENSUAL), DELTA);
+        assertEquals(0.0, simulacion.getPagoTotal(FrecuenciaEnum.TRIMESTRAL), DELTA);
+        assertEquals(480.0, simulacion.getPrecioFinal(FrecuenciaEnum.ANUAL), DELTA);
+        assertEquals(1, simulacion.getNumeroAsegurados());
+        assertFalse(simulacion.isPromocionDescuento());
+
+        final Map<String, Object> legado = simulacion.asLegacyMap();
+        assertArrayEquals(new Double[]{10.0, 0.0, 0.0, 120.0}, (Double[]) legado.get(StaticVarsContratacion.DESCUENTOS_TOTALES));
+        assertArrayEquals(new Double[]{40.0, 0.0, 0.0, 480.0}, (Double[]) legado.get(StaticVarsContratacion.PAGO_TOTAL));
+        assertEquals(1, ((List<?>) legado.get(StaticVarsContratacion.PRIMAS_SIMULACION)).size());
+        assertEquals(Boolean.TRUE, legado.get(StaticVarsContratacion.HAY_DESGLOSE));
+
+        legado.put("OTRA", "valor");
+        assertEquals("valor", legado.get("OTRA"));
+    }
+
+    @Test
+    public void promocionDeDescuentoSustituyeElPagoTotal() {
+        final Map<FrecuenciaEnum, ResultadoFrecuencia> resultados = new EnumMap<>(FrecuenciaEnum.class);
+        final PromocionAplicada promocion = new PromocionAplicada();
+        promocion.setTipoPromocion(TipoPromocionEnum.DESCUENTO_PORCENTAJE);
+        resultados.put(FrecuenciaEnum.MENSUAL, resultado(FrecuenciaEnum.MENSUAL, 10.0, 40.0, promocion));
+
+        final ResultadoSimulacion simulacion = new ResultadoSimulacion(resultados, false);
+
+        assertTrue(simulacion.isPromocionDescuento());
+        assertEquals(35.0, simulacion.getPrecioFinal(FrecuenciaEnum.MENSUAL), DELTA);
+        assertArrayEquals(new Double[]{35.0, 0.0, 0.0, 0.0},
+                (Double[]) simulacion.asLegacyMap().get(StaticVarsContratacion.PAGO_TOTAL));
+    }
+
+    private static ResultadoFrecuencia resultado(final FrecuenciaEnum frecuencia, final double descuento,
+                                                 final double pagoTotal, final PromocionAplicada promocion) {
+        final PrimasPorProducto prima = new PrimasPorProducto();
+        prima.setPrima(descuento);
+        final List<PromocionAplicada> promociones = promocion == null
+                ? Collections.<PromocionAplicada>emptyList() : Collections.singletonList(promocion);
+        return new ResultadoFrecuencia(frecuencia, Collections.singletonList(Collections.singletonList(prima)),
+                new double[][]{{descuento}}, promociones, Arrays.asList(new Recibo()), descuento, pagoTotal,
+                pagoTotal - 5.0, null);
+    }
+}
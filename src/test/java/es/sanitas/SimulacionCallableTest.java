@@ -0,0 +1,148 @@
+package es.sanitas;
+
+import es.sanitas.soporte.DatosAltaAsegurados;
+import es.sanitas.soporte.ExcepcionContratacion;
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.SimulacionWS;
+import es.sanitas.soporte.StaticVarsContratacion;
+import es.sanitas.soporte.TarificacionPoliza;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class SimulacionCallableTest {
+
+    private static final String COD_PROMOCIONAL = StaticVarsContratacion.SIMULACION_ERROR_COD_PROMOCIONAL;
+    private static final String TRANSITORIO = "-500";
+
+    @Test
+    public void codigoPromocionalNoValidoSeRepiteSinCodigo() throws Exception {
+        // Sin presupuesto y con un único intento: la repetición sin código no cuenta para ninguno
+        final PoliticaReintentos politica = politica(1);
+        politica.setPresupuesto(0, 0);
+        final SimulacionWSFalso servicio = new SimulacionWSFalso()
+                .fallar(FrecuenciaEnum.MENSUAL, COD_PROMOCIONAL)
+                .responder(FrecuenciaEnum.MENSUAL, DatosPrueba.tarificacion(10));
+
+        final TarificacionPoliza resultado = simulacion(servicio, politica).call();
+
+        assertEquals(COD_PROMOCIONAL, resultado.getCodigoError());
+        assertEquals(Arrays.asList(1, 0), servicio.getPromocionesEnviadas());
+        assertEquals(0, politica.getDenegados());
+    }
+
+    @Test
+    public void erroresTransitoriosHastaElMaximoDeIntentos() throws Exception {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.MENSUAL, TRANSITORIO);
+
+        try {
+            simulacion(servicio, politica(3)).call();
+            fail("Se esperaba ExcepcionContratacion");
+        } catch (final ExcepcionContratacion e) {
+            // Agotar los intentos no convierte el error transitorio en un rechazo del servicio
+            assertFalse(e instanceof ExcepcionSimulacionRechazada);
+            assertEquals(3, servicio.getLlamadas());
+        }
+    }
+
+    @Test
+    public void unErrorQueNoSeRepiteEsUnRechazo() throws Exception {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.MENSUAL, "-1");
+
+        try {
+            simulacion(servicio, politica(3)).call();
+            fail("Se esperaba ExcepcionSimulacionRechazada");
+        } catch (final ExcepcionSimulacionRechazada e) {
+            assertEquals(1, servicio.getLlamadas());
+        }
+    }
+
+    @Test
+    public void elPlazoAgotadoNoEsUnRechazo() throws Exception {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso();
+
+        try {
+            new SimulacionCallable(CatalogoPlan.de(DatosPrueba.plan()), DatosPrueba.alta(), null, null,
+                    FrecuenciaEnum.MENSUAL, servicio, Plazo.dentroDe(0, TimeUnit.MILLISECONDS), null, politica(1),
+                    null).call();
+            fail("Se esperaba ExcepcionContratacion");
+        } catch (final ExcepcionContratacion e) {
+            assertFalse(e instanceof ExcepcionSimulacionRechazada);
+            assertEquals(0, servicio.getLlamadas());
+        }
+    }
+
+    @Test
+    public void laRepeticionSinCodigoNoGastaIntentos() throws Exception {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso()
+                .fallar(FrecuenciaEnum.MENSUAL, COD_PROMOCIONAL)
+                .fallar(FrecuenciaEnum.MENSUAL, TRANSITORIO)
+                .responder(FrecuenciaEnum.MENSUAL, DatosPrueba.tarificacion(10));
+
+        final TarificacionPoliza resultado = simulacion(servicio, politica(2)).call();
+
+        assertEquals(3, servicio.getLlamadas());
+        assertEquals(COD_PROMOCIONAL, resultado.getCodigoError());
+    }
+
+    @Test
+    public void sinCodigoPromocionalNoSeRepite() throws Exception {
+        final SimulacionWSFalso servicio = new SimulacionWSFalso().fallar(FrecuenciaEnum.MENSUAL, COD_PROMOCIONAL);
+        final DatosAltaAsegurados alta = DatosPrueba.alta();
+
+        try {
+            new SimulacionCallable(CatalogoPlan.de(DatosPrueba.plan()), alta, null, null, FrecuenciaEnum.MENSUAL,
+                    servicio, null, null, politica(2), null).call();
+            fail("Se esperaba ExcepcionContratacion");
+        } catch (final ExcepcionContratacion e) {
+            assertNull(alta.getCodigoPromocional());
+            assertEquals(1, servicio.getLlamadas());
+        }
+    }
+
+    @Test
+    public void lasLlamadasCanceladasNoAjustanElLimitador() throws Exception {
+        final LimitadorSimulaciones limitador = new LimitadorSimulaciones(5, 1, 10, 1000, 0, 0);
+        final SimulacionWS interrumpida = in -> {
+            throw new IllegalStateException("Interrumpida la espera de la simulacion", new InterruptedException());
+        };
+        final SimulacionWS cancelada = in -> {
+            Thread.currentThread().interrupt();
+            return new SimulacionWSFalso().fallar(FrecuenciaEnum.MENSUAL, "-1").simular(in);
+        };
+
+        for (final SimulacionWS servicio : Arrays.asList(interrumpida, cancelada)) {
+            try {
+                new SimulacionCallable(CatalogoPlan.de(DatosPrueba.plan()), DatosPrueba.alta(), null, null,
+                        FrecuenciaEnum.MENSUAL, servicio, null, null, politica(1), limitador).call();
+                fail("Se esperaba un error");
+            } catch (final IllegalStateException | ExcepcionContratacion e) {
+                Thread.interrupted();
+            }
+        }
+        assertEquals(0, limitador.getReducciones());
+        assertEquals(0, limitador.getEnCurso());
+    }
+
+    private static PoliticaReintentos politica(final int maxIntentos) {
+        final PoliticaReintentos politica = new PoliticaReintentos();
+        politica.setMaxIntentos(maxIntentos);
+        politica.setEsperas(0, 0);
+        politica.setCodigosTransitorios(Collections.singleton(TRANSITORIO));
+        return politica;
+    }
+
+    private static SimulacionCallable simulacion(final SimulacionWSFalso servicio, final PoliticaReintentos politica) {
+        final DatosAltaAsegurados alta = DatosPrueba.alta();
+        alta.setCodigoPromocional("PROMO");
+        return new SimulacionCallable(CatalogoPlan.de(DatosPrueba.plan()), alta, null, null, FrecuenciaEnum.MENSUAL,
+                servicio, null, null, politica, null);
+    }
+}
@@ -0,0 +1,144 @@
+package es.sanitas;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Error;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Simulacion;
+import es.sanitas.seg.simulacionpoliza.services.api.simulacion.vo.Tarificacion;
+import es.sanitas.soporte.FrecuenciaEnum;
+import es.sanitas.soporte.RESTResponse;
+import es.sanitas.soporte.SimulacionWS;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servicio de simulación en memoria para las pruebas: cuenta las llamadas recibidas y devuelve una
+ * tarificación vacía, salvo que se hayan configurado respuestas o esperas para la frecuencia de la
+ * petición.
+ */
+class SimulacionWSFalso implements SimulacionWS {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final AtomicInteger llamadas = new AtomicInteger();
+    private final AtomicInteger interrumpidas = new AtomicInteger();
+    private final long esperaMillis;
+
+    // Por frecuencia de pago: respuestas en orden (la última se repite) y espera de cada llamada
+    private final Map<FrecuenciaEnum, Deque<RESTResponse<Tarificacion, Error>>> respuestas = new ConcurrentHashMap<>();
+    private final Map<FrecuenciaEnum, Long> esperas = new ConcurrentHashMap<>();
+    private final List<Integer> promocionesEnviadas = new CopyOnWriteArrayList<>();
+
+    SimulacionWSFalso() {
+        this(0);
+    }
+
+    SimulacionWSFalso(final long esperaMillis) {
+        this.esperaMillis = esperaMillis;
+    }
+
+    /**
+     * Añade una respuesta correcta a las de la frecuencia.
+     */
+    SimulacionWSFalso responder(final FrecuenciaEnum frecuencia, final Tarificacion tarificacion) {
+        final RESTResponse<Tarificacion, Error> response = new RESTResponse<>();
+        response.out = tarificacion;
+        return encolar(frecuencia, response);
+    }
+
+    /**
+     * Añade un error del servicio a las respuestas de la frecuencia.
+     */
+    SimulacionWSFalso fallar(final FrecuenciaEnum frecuencia, final String codigo) {
+        final Error error = new Error();
+        error.setCodigo(codigo);
+        error.setDescripcion("Error " + codigo + " en frecuencia " + frecuencia);
+        final RESTResponse<Tarificacion, Error> response = new RESTResponse<>();
+        response.error = error;
+        response.rawResponse = codigo;
+        return encolar(frecuencia, response);
+    }
+
+    /**
+     * Las llamadas de la frecuencia tardan el tiempo indicado, o hasta que se interrumpen.
+     */
+    SimulacionWSFalso esperar(final FrecuenciaEnum frecuencia, final long millis) {
+        esperas.put(frecuencia, millis);
+        return this;
+    }
+
+    private SimulacionWSFalso encolar(final FrecuenciaEnum frecuencia, final RESTResponse<Tarificacion, Error> response) {
+        final Deque<RESTResponse<Tarificacion, Error>> cola = respuestas.get(frecuencia);
+        if (cola == null) {
+            respuestas.put(frecuencia, new ArrayDeque<>(Collections.singleton(response)));
+        } else {
+            cola.addLast(response);
+        }
+        return this;
+    }
+
+    @Override
+    public RESTResponse<Tarificacion, Error> simular(final Simulacion in) {
+        llamadas.incrementAndGet();
+        if (in.getInfoPromociones() != null && in.getInfoPromociones().getListaPromociones() != null) {
+            promocionesEnviadas.add(in.getInfoPromociones().getListaPromociones().length);
+        }
+        final FrecuenciaEnum frecuencia = in.getInfoContratacion() != null
+                ? FrecuenciaEnum.obtenerFrecuencia(in.getInfoContratacion().getFrecuenciaPago()) : null;
+        final Long espera = frecuencia != null ? esperas.get(frecuencia) : null;
+        final long millis = espera != null ? espera : esperaMillis;
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (final InterruptedException e) {
+                interrumpidas.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        }
+        final Deque<RESTResponse<Tarificacion, Error>> cola = frecuencia != null ? respuestas.get(frecuencia) : null;
+        if (cola != null) {
+            synchronized (cola) {
+                return cola.size() > 1 ? cola.pollFirst() : cola.peekFirst();
+            }
+        }
+        final RESTResponse<Tarificacion, Error> response = new RESTResponse<>();
+        response.out = tarificacionVacia();
+        return response;
+    }
+
+    int getLlamadas() {
+        return llamadas.get();
+    }
+
+    /**
+     * @return llamadas cuya espera se ha interrumpido
+     */
+    int getInterrumpidas() {
+        return interrumpidas.get();
+    }
+
+    /**
+     * @return número de códigos promocionales enviados en cada llamada, en orden
+     */
+    List<Integer> getPromocionesEnviadas() {
+        return promocionesEnviadas;
+    }
+
+    static Tarificacion tarificacionVacia() {
+        return MAPPER.convertValue(Collections.singletonMap("tarifas", Collections.emptyMap()), Tarificacion.class);
+    }
+
+    static Simulacion simulacion(final int operacion) {
+        final Simulacion in = new Simulacion();
+        in.setOperacion(operacion);
+        return in;
+    }
+}